@@ -0,0 +1,80 @@
+package benchmarks;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Discretize;
+import weka.filters.unsupervised.attribute.ReplaceMissingValues;
+import weka.filters.unsupervised.attribute.StringToWordVector;
+
+import java.io.File;
+
+/**
+ * Loads the ARFF files of data/ the way every classifier under test
+ * can train on them. The last attribute is the class. Text datasets are
+ * turned into word vectors first, and the ID3 learners get discretized
+ * data without missing values, since they only accept that.
+ */
+public final class BenchmarkData {
+
+    private BenchmarkData() {
+
+    }
+
+    /**
+     * return whether the classifier only takes nominal data
+     * without missing values
+     */
+    public static boolean isNominalOnly(String classifier) {
+        return classifier.endsWith("ID3") || classifier.endsWith("Id3");
+    }
+
+    /**
+     * load data/&lt;dataset&gt;.arff prepared for the classifier
+     */
+    public static Instances load(String dataset, String classifier) throws Exception {
+        Instances data = new DataSource(new File(dataDirectory(), dataset + ".arff").getPath()).getDataSet();
+        Attribute classAttribute = data.attribute(data.numAttributes() - 1);
+        data.setClassIndex(classAttribute.index());
+
+        boolean hasString = false;
+        for (int i = 0; i < data.numAttributes(); ++i) {
+            hasString |= data.attribute(i).isString();
+        }
+
+        if (hasString) {
+            StringToWordVector wordVector = new StringToWordVector();
+            wordVector.setInputFormat(data);
+            data = Filter.useFilter(data, wordVector);
+            data.setClass(data.attribute(classAttribute.name()));
+        }
+
+        if (isNominalOnly(classifier)) {
+            Discretize discretize = new Discretize();
+            discretize.setInputFormat(data);
+            data = Filter.useFilter(data, discretize);
+
+            ReplaceMissingValues replace = new ReplaceMissingValues();
+            replace.setInputFormat(data);
+            data = Filter.useFilter(data, replace);
+        }
+
+        return data;
+    }
+
+    /**
+     * the directory with the ARFF files, -Dbenchmark.data=... or data/
+     * seen from the repository root or from this module
+     */
+    static File dataDirectory() {
+        String configured = System.getProperty("benchmark.data");
+
+        if (configured != null) {
+            return new File(configured);
+        }
+
+        File fromRoot = new File("data");
+        return fromRoot.isDirectory() ? fromRoot : new File("../data");
+    }
+}
@@ -0,0 +1,55 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to read an ARFF file with Weka's DataSource next to reading it
+ * straight into training columns with myArffLoader. The loader lives in
+ * the default package, so it is called by reflection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadingBenchmark {
+
+    @Param({"credit-g", "segment-challenge", "supermarket"})
+    public String dataset;
+
+    private File file;
+    private Method load;
+
+    @Setup
+    public void prepare() throws Exception {
+        file = new File(BenchmarkData.dataDirectory(), dataset + ".arff");
+        load = Class.forName("myArffLoader").getMethod("load", File.class);
+    }
+
+    @Benchmark
+    public Instances dataSource() throws Exception {
+        return new DataSource(file.getPath()).getDataSet();
+    }
+
+    @Benchmark
+    public Object columnLoader() throws Exception {
+        return load.invoke(null, file);
+    }
+}
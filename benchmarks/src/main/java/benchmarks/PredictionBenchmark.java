@@ -0,0 +1,67 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of a single classifyInstance and distributionForInstance call on
+ * a model trained on the whole dataset. Every call takes the next
+ * training instance, so all paths through the tree are exercised.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PredictionBenchmark {
+
+    @Param({"myID3", "weka.classifiers.trees.Id3", "myC45", "weka.classifiers.trees.J48"})
+    public String classifier;
+
+    @Param({"weather.numeric", "credit-g", "segment-challenge", "supermarket", "ReutersGrain-train"})
+    public String dataset;
+
+    private Instances data;
+    private Classifier model;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void train() throws Exception {
+        data = BenchmarkData.load(dataset, classifier);
+        model = Classifier.forName(classifier, new String[0]);
+        model.buildClassifier(data);
+    }
+
+    private Instance nextInstance() {
+        Instance instance = data.instance(next);
+        next = next + 1 == data.numInstances() ? 0 : next + 1;
+
+        return instance;
+    }
+
+    @Benchmark
+    public double classifyInstance() throws Exception {
+        return model.classifyInstance(nextInstance());
+    }
+
+    @Benchmark
+    public double[] distributionForInstance() throws Exception {
+        return model.distributionForInstance(nextInstance());
+    }
+}
@@ -0,0 +1,53 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of buildClassifier for the repository learners next to Weka's.
+ * The classifiers in ../src live in the default package, so every
+ * classifier is created by name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrainingBenchmark {
+
+    @Param({"myID3", "weka.classifiers.trees.Id3", "myC45", "weka.classifiers.trees.J48"})
+    public String classifier;
+
+    @Param({"weather.numeric", "credit-g", "segment-challenge", "supermarket", "ReutersGrain-train"})
+    public String dataset;
+
+    private Instances data;
+
+    @Setup(Level.Trial)
+    public void load() throws Exception {
+        data = BenchmarkData.load(dataset, classifier);
+    }
+
+    @Benchmark
+    public Classifier buildClassifier() throws Exception {
+        Classifier model = Classifier.forName(classifier, new String[0]);
+        model.buildClassifier(data);
+
+        return model;
+    }
+}
@@ -67,6 +67,15 @@ public class MainJ48 {
         return classifiers;
     }
 
+    public static void saveModel(String model_name, myC45 classifiers) throws Exception {
+        myTreeFile.write(model_name, classifiers);
+    }
+
+    public static myC45 loadMyC45Model(String model_name) throws Exception {
+        myC45 classifiers = (myC45) myTreeFile.read(model_name);
+        return classifiers;
+    }
+
     public static void main(String[] args) throws java.lang.Exception {
         // load from arff
 
@@ -104,7 +113,7 @@ public class MainJ48 {
         evalTrainingTest.evaluateModel(j48, dataResample);
 
         evalCrossValidation = new Evaluation(dataResample);
-        evalCrossValidation.crossValidateModel(j48, dataResample, 10, new Random(1));
+        myCrossValidation.crossValidateModel(evalCrossValidation, j48, dataResample, 10, new Random(1), 0);
 
         percentageSplit(80.0);
 
@@ -50,11 +50,11 @@ public class MainMyID3 {
     }
 
     public static void saveModel(String model_name, myID3 classifiers) throws Exception {
-        weka.core.SerializationHelper.write(model_name, classifiers);
+        myTreeFile.write(model_name, classifiers);
     }
 
     public static myID3 loadModel(String model_name) throws Exception {
-        myID3 classifiers = (myID3) weka.core.SerializationHelper.read(model_name);
+        myID3 classifiers = (myID3) myTreeFile.read(model_name);
         return classifiers;
     }
 
@@ -91,7 +91,7 @@ public class MainMyID3 {
         evalTrainingTest.evaluateModel(id3, dataDiscritize);
 
         evalCrossValidation = new Evaluation(dataDiscritize);
-        evalCrossValidation.crossValidateModel(id3, dataDiscritize, 10, new Random(1));
+        myCrossValidation.crossValidateModel(evalCrossValidation, id3, dataDiscritize, 10, new Random(1), 0);
 
         percentageSplit(60.0);
 
@@ -0,0 +1,601 @@
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reads an ARFF file straight into a myColumnStore, no Instances are
+ * built on the way. The header is parsed once by Weka, the data section
+ * is memory-mapped and cut into chunks at line ends. The chunks are
+ * counted first and then parsed in parallel, every chunk into its own
+ * range of rows of the final columns, so the heap only ever holds the
+ * columns. Dense and sparse rows are read, the attributes have to be
+ * nominal or numeric with a nominal class, and instance weights are not
+ * supported.
+ */
+public class myArffLoader {
+
+    // chunks are at most this large (a mapping cannot pass 2 GB) and, unless the file is small, at least MIN_CHUNK_SIZE
+    private static final int MAX_CHUNK_SIZE = 64 << 20;
+    private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+    // nominal values are compared as bytes up to this many values, looked up by String above it
+    private static final int MAX_SCANNED_VALUES = 8;
+
+    // 10^0 to 10^22 are exact doubles
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private myArffLoader() {
+
+    }
+
+    /**
+     * read the file on the calling thread, the last attribute is the class
+     */
+    public static myColumnStore load(File file) throws IOException {
+        return load(file, -1, 1);
+    }
+
+    /**
+     * read the file, classIndex -1 makes the last attribute the class.
+     * numThreads works as for myForkJoin.createPool
+     */
+    public static myColumnStore load(File file, int classIndex, int numThreads) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long[] dataSection = new long[1];
+            Instances header = readHeader(channel, dataSection);
+            header.setClassIndex(classIndex < 0 ? header.numAttributes() - 1 : classIndex);
+            checkHeader(header);
+
+            ForkJoinPool pool = myForkJoin.createPool(numThreads);
+
+            try {
+                int parallelism = pool == null ? 1 : pool.getParallelism();
+                long[] bounds = chunkBounds(channel, dataSection[0], parallelism);
+                return readData(channel, header, bounds, pool);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                myForkJoin.shutdown(pool);
+            }
+        }
+    }
+
+    /**
+     * read everything up to the @data line and let Weka parse it, the
+     * start of the data section is returned in dataSection[0]
+     */
+    private static Instances readHeader(FileChannel channel, long[] dataSection) throws IOException {
+        InputStream in = new BufferedInputStream(Channels.newInputStream(channel.position(0)));
+        StringBuilder line = new StringBuilder();
+        java.io.ByteArrayOutputStream text = new java.io.ByteArrayOutputStream();
+        long position = 0;
+        int b;
+
+        while ((b = in.read()) != -1) {
+            ++position;
+            text.write(b);
+
+            if (b != '\n') {
+                line.append((char)b);
+                continue;
+            }
+
+            if (line.toString().trim().toLowerCase().startsWith("@data")) {
+                dataSection[0] = position;
+                Instances header = new Instances(new StringReader(text.toString(StandardCharsets.UTF_8.name())));
+                return new Instances(header, 0);
+            }
+
+            line.setLength(0);
+        }
+
+        throw new IOException("No @data section found");
+    }
+
+    private static void checkHeader(Instances header) throws IOException {
+        for (int j = 0; j < header.numAttributes(); ++j) {
+            Attribute attribute = header.attribute(j);
+
+            if (!attribute.isNominal() && !attribute.isNumeric()) {
+                throw new IOException("Attribute " + attribute.name() + " is neither nominal nor numeric");
+            }
+        }
+
+        if (!header.classAttribute().isNominal()) {
+            throw new IOException("Class attribute " + header.classAttribute().name() + " is not nominal");
+        }
+    }
+
+    /**
+     * cut [dataStart, size) into chunks that end right after a line end,
+     * return the offsets of their boundaries
+     */
+    private static long[] chunkBounds(FileChannel channel, long dataStart, int parallelism) throws IOException {
+        long size = channel.size();
+        long length = size - dataStart;
+        long numChunks = Math.max((length + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE,
+                Math.min(parallelism, (length + MIN_CHUNK_SIZE - 1) / MIN_CHUNK_SIZE));
+        numChunks = Math.max(numChunks, 1);
+
+        long[] bounds = new long[(int)numChunks + 1];
+        int numBounds = 1;
+        bounds[0] = dataStart;
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        for (int k = 1; k < numChunks; ++k) {
+            long position = Math.max(dataStart + length * k / numChunks, bounds[numBounds - 1]);
+            position = nextLineStart(channel, position, buffer);
+
+            if (position > bounds[numBounds - 1] && position < size) {
+                bounds[numBounds++] = position;
+            }
+        }
+
+        bounds[numBounds++] = size;
+        return Arrays.copyOf(bounds, numBounds);
+    }
+
+    /**
+     * return the offset right after the first line end at or after position
+     */
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+
+            if (read <= 0) {
+                return channel.size();
+            }
+
+            for (int i = 0; i < read; ++i) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+
+            position += read;
+        }
+    }
+
+    /**
+     * count the rows of every chunk, then parse every chunk into its range
+     * of the columns
+     */
+    private static myColumnStore readData(FileChannel channel, Instances header, long[] bounds, ForkJoinPool pool) throws IOException {
+        int numChunks = bounds.length - 1;
+        ByteBuffer[] chunks = new ByteBuffer[numChunks];
+
+        for (int k = 0; k < numChunks; ++k) {
+            chunks[k] = channel.map(FileChannel.MapMode.READ_ONLY, bounds[k], bounds[k + 1] - bounds[k]);
+        }
+
+        int[] firstRows = new int[numChunks + 1];
+        myForkJoin.forEach(pool, numChunks, k -> firstRows[k + 1] = countRows(chunks[k]));
+
+        for (int k = 0; k < numChunks; ++k) {
+            firstRows[k + 1] += firstRows[k];
+        }
+
+        int numRows = firstRows[numChunks];
+        int numAttributes = header.numAttributes();
+        int[][] codes = new int[numAttributes][];
+        double[][] values = new double[numAttributes][];
+        int[] classCodes = new int[numRows];
+        double[] weights = new double[numRows];
+        int[][] storedAttributes = new int[numRows][];
+        Arrays.fill(weights, 1);
+
+        for (int j = 0; j < numAttributes; ++j) {
+            if (j == header.classIndex()) {
+                continue;
+            }
+
+            if (header.attribute(j).isNominal()) {
+                codes[j] = new int[numRows];
+            } else {
+                values[j] = new double[numRows];
+            }
+        }
+
+        boolean[] allSparse = new boolean[numChunks];
+
+        myForkJoin.forEach(pool, numChunks, k -> {
+            ChunkParser parser = new ChunkParser(header, codes, values, classCodes, storedAttributes);
+
+            try {
+                allSparse[k] = parser.parse(chunks[k], firstRows[k]);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        boolean sparse = numRows > 0;
+        for (boolean chunkSparse : allSparse) {
+            sparse &= chunkSparse;
+        }
+
+        return myColumnStore.fromColumns(header, codes, values, classCodes, weights, sparse ? storedAttributes : null);
+    }
+
+    /**
+     * return whether the line from start is a data line, not empty
+     * and not a comment
+     */
+    private static boolean isDataLine(ByteBuffer chunk, int start, int end) {
+        for (int i = start; i < end; ++i) {
+            byte b = chunk.get(i);
+
+            if (b != ' ' && b != '\t' && b != '\r') {
+                return b != '%';
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * return the end of the line from start, the line end excluded
+     */
+    private static int lineEnd(ByteBuffer chunk, int start) {
+        int end = start;
+
+        while (end < chunk.limit() && chunk.get(end) != '\n') {
+            ++end;
+        }
+
+        return end;
+    }
+
+    private static int countRows(ByteBuffer chunk) {
+        int numRows = 0;
+        int start = 0;
+
+        while (start < chunk.limit()) {
+            int end = lineEnd(chunk, start);
+
+            if (isDataLine(chunk, start, end)) {
+                ++numRows;
+            }
+
+            start = end + 1;
+        }
+
+        return numRows;
+    }
+
+    /**
+     * Parses the lines of one chunk into a range of rows. Every token is
+     * copied (unquoted) into a reused buffer, so nothing is allocated per
+     * value unless a number or nominal value needs the slow path.
+     */
+    private static class ChunkParser {
+
+        private final Instances header;
+        private final int classIndex;
+        private final int[][] codes;
+        private final double[][] values;
+        private final int[] classCodes;
+        private final int[][] storedAttributes;
+
+        // [attribute][value] UTF-8 bytes of the nominal values, null above MAX_SCANNED_VALUES
+        private final byte[][][] nominalBytes;
+
+        private byte[] token = new byte[64];
+        private int tokenLength;
+        private boolean tokenQuoted;
+
+        private int[] stored = new int[16];
+
+        ChunkParser(Instances header, int[][] codes, double[][] values, int[] classCodes, int[][] storedAttributes) {
+            this.header = header;
+            this.classIndex = header.classIndex();
+            this.codes = codes;
+            this.values = values;
+            this.classCodes = classCodes;
+            this.storedAttributes = storedAttributes;
+            this.nominalBytes = new byte[header.numAttributes()][][];
+
+            for (int j = 0; j < header.numAttributes(); ++j) {
+                Attribute attribute = header.attribute(j);
+
+                if (attribute.isNominal() && attribute.numValues() <= MAX_SCANNED_VALUES) {
+                    nominalBytes[j] = new byte[attribute.numValues()][];
+
+                    for (int v = 0; v < attribute.numValues(); ++v) {
+                        nominalBytes[j][v] = attribute.value(v).getBytes(StandardCharsets.UTF_8);
+                    }
+                }
+            }
+        }
+
+        /**
+         * parse every data line of the chunk into the rows from firstRow,
+         * return whether all of them were sparse
+         */
+        boolean parse(ByteBuffer chunk, int firstRow) throws IOException {
+            int row = firstRow;
+            int start = 0;
+            boolean allSparse = true;
+
+            while (start < chunk.limit()) {
+                int end = lineEnd(chunk, start);
+
+                if (isDataLine(chunk, start, end)) {
+                    int position = skipBlanks(chunk, start, end);
+
+                    if (chunk.get(position) == '{') {
+                        parseSparse(chunk, position + 1, end, row);
+                    } else {
+                        parseDense(chunk, position, end, row);
+                        allSparse = false;
+                    }
+
+                    ++row;
+                }
+
+                start = end + 1;
+            }
+
+            return allSparse;
+        }
+
+        private void parseDense(ByteBuffer chunk, int position, int end, int row) throws IOException {
+            int numAttributes = header.numAttributes();
+
+            for (int j = 0; j < numAttributes; ++j) {
+                position = readToken(chunk, skipBlanks(chunk, position, end), end, false);
+                setValue(row, j);
+                position = skipBlanks(chunk, position, end);
+
+                if (j + 1 < numAttributes) {
+                    if (position >= end || chunk.get(position) != ',') {
+                        throw new IOException("Row " + (row + 1) + ": " + numAttributes + " values expected");
+                    }
+                    ++position;
+                }
+            }
+
+            if (position < end && chunk.get(position) != '\r') {
+                throw new IOException("Row " + (row + 1) + ": more than " + numAttributes + " values");
+            }
+        }
+
+        private void parseSparse(ByteBuffer chunk, int position, int end, int row) throws IOException {
+            int numStored = 0;
+
+            while (true) {
+                position = skipBlanks(chunk, position, end);
+
+                if (position < end && chunk.get(position) == '}') {
+                    break;
+                }
+
+                int index = 0;
+                int digits = 0;
+
+                while (position < end && chunk.get(position) >= '0' && chunk.get(position) <= '9') {
+                    index = index * 10 + (chunk.get(position++) - '0');
+                    ++digits;
+                }
+
+                if (digits == 0 || index >= header.numAttributes()) {
+                    throw new IOException("Row " + (row + 1) + ": bad attribute index in sparse row");
+                }
+
+                position = readToken(chunk, skipBlanks(chunk, position, end), end, true);
+                setValue(row, index);
+
+                if (index != classIndex) {
+                    if (numStored == stored.length) {
+                        stored = Arrays.copyOf(stored, numStored * 2);
+                    }
+                    stored[numStored++] = index;
+                }
+
+                position = skipBlanks(chunk, position, end);
+
+                if (position < end && chunk.get(position) == ',') {
+                    ++position;
+                } else if (position >= end || chunk.get(position) != '}') {
+                    throw new IOException("Row " + (row + 1) + ": sparse row is not closed");
+                }
+            }
+
+            int[] result = Arrays.copyOf(stored, numStored);
+            Arrays.sort(result);
+            storedAttributes[row] = result;
+        }
+
+        private static int skipBlanks(ByteBuffer chunk, int position, int end) {
+            while (position < end && (chunk.get(position) == ' ' || chunk.get(position) == '\t')) {
+                ++position;
+            }
+
+            return position;
+        }
+
+        /**
+         * copy the token from position into the buffer, quotes removed,
+         * return the position after it
+         */
+        private int readToken(ByteBuffer chunk, int position, int end, boolean inSparse) throws IOException {
+            tokenLength = 0;
+            tokenQuoted = position < end && (chunk.get(position) == '\'' || chunk.get(position) == '"');
+
+            if (tokenQuoted) {
+                byte quote = chunk.get(position++);
+
+                while (position < end && chunk.get(position) != quote) {
+                    byte b = chunk.get(position++);
+
+                    if (b == '\\' && position < end) {
+                        b = unescape(chunk.get(position++));
+                    }
+                    append(b);
+                }
+
+                if (position >= end) {
+                    throw new IOException("Quote not closed");
+                }
+
+                return position + 1;
+            }
+
+            while (position < end) {
+                byte b = chunk.get(position);
+
+                if (b == ',' || b == '\r' || (inSparse && b == '}')) {
+                    break;
+                }
+
+                append(b);
+                ++position;
+            }
+
+            // trailing blanks before the separator are not part of the value
+            while (tokenLength > 0 && (token[tokenLength - 1] == ' ' || token[tokenLength - 1] == '\t')) {
+                --tokenLength;
+            }
+
+            return position;
+        }
+
+        private static byte unescape(byte b) {
+            switch (b) {
+                case 'n':
+                    return '\n';
+                case 't':
+                    return '\t';
+                case 'r':
+                    return '\r';
+                default:
+                    return b;
+            }
+        }
+
+        private void append(byte b) {
+            if (tokenLength == token.length) {
+                token = Arrays.copyOf(token, tokenLength * 2);
+            }
+            token[tokenLength++] = b;
+        }
+
+        private void setValue(int row, int attributeIndex) throws IOException {
+            boolean missing = !tokenQuoted && tokenLength == 1 && token[0] == '?';
+
+            if (attributeIndex == classIndex) {
+                classCodes[row] = missing ? myColumnStore.MISSING_CODE : nominalIndex(attributeIndex);
+            } else if (codes[attributeIndex] != null) {
+                codes[attributeIndex][row] = missing ? myColumnStore.MISSING_CODE : nominalIndex(attributeIndex);
+            } else {
+                values[attributeIndex][row] = missing ? Instance.missingValue() : parseNumber();
+            }
+        }
+
+        private int nominalIndex(int attributeIndex) throws IOException {
+            byte[][] candidates = nominalBytes[attributeIndex];
+            int index = -1;
+
+            if (candidates != null) {
+                for (int v = 0; v < candidates.length && index < 0; ++v) {
+                    if (tokenEquals(candidates[v])) {
+                        index = v;
+                    }
+                }
+            } else {
+                index = header.attribute(attributeIndex).indexOfValue(tokenString());
+            }
+
+            if (index < 0) {
+                throw new IOException("Nominal value " + tokenString() + " not declared for " + header.attribute(attributeIndex).name());
+            }
+
+            return index;
+        }
+
+        private boolean tokenEquals(byte[] value) {
+            if (value.length != tokenLength) {
+                return false;
+            }
+
+            for (int i = 0; i < tokenLength; ++i) {
+                if (value[i] != token[i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private String tokenString() {
+            return new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * parse a plain decimal exactly the way Double.parseDouble does:
+         * a mantissa below 2^53 divided by an exact power of ten is
+         * correctly rounded. Anything else goes through Double.parseDouble
+         */
+        private double parseNumber() throws IOException {
+            int i = 0;
+            boolean negative = false;
+
+            if (i < tokenLength && (token[i] == '-' || token[i] == '+')) {
+                negative = token[i++] == '-';
+            }
+
+            long mantissa = 0;
+            int numDigits = 0;
+            int numDecimals = 0;
+            boolean inFraction = false;
+            boolean exact = i < tokenLength;
+
+            for (; i < tokenLength && exact; ++i) {
+                byte b = token[i];
+
+                if (b >= '0' && b <= '9') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    numDigits += mantissa == 0 ? 0 : 1;
+                    numDecimals += inFraction ? 1 : 0;
+                    exact = numDigits <= 15 && numDecimals < POWERS_OF_TEN.length;
+                } else if (b == '.' && !inFraction) {
+                    inFraction = true;
+                } else {
+                    exact = false;
+                }
+            }
+
+            if (exact) {
+                double value = mantissa / POWERS_OF_TEN[numDecimals];
+                return negative ? -value : value;
+            }
+
+            try {
+                return Double.parseDouble(tokenString());
+            } catch (NumberFormatException e) {
+                throw new IOException("Number expected instead of " + tokenString());
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+import weka.core.Instance;
+import weka.core.Utils;
+
+import java.io.Serializable;
+
+/**
+ * Quantile bins of the numeric attributes of a column store.
+ * Every numeric column is cut once into at most numBins bins holding
+ * about the same number of rows, and every row gets the short code of
+ * its bin. A cut point sits halfway between two distinct values, and a
+ * value is in bin b exactly when it goes right of cut points 0..b-1 and
+ * left of cut point b under the split rule of myModel, so splitting on
+ * a cut point separates the same rows as the bins do.
+ */
+public class myBinning implements Serializable {
+
+    public static final short MISSING_CODE = -1;
+
+    // [attribute], ascending, null for attributes that are not binned
+    private final double[][] cutPoints;
+
+    // [attribute][row of the store]
+    private final short[][] codes;
+
+    private myBinning(double[][] cutPoints, short[][] codes) {
+        this.cutPoints = cutPoints;
+        this.codes = codes;
+    }
+
+    /**
+     * bin every numeric attribute that has sorted positions, the positions
+     * index into rows, which index into the store
+     */
+    public static myBinning create(myColumnStore store, int[] rows, int[][] sortedPositions, int numBins) {
+        if (numBins < 2 || numBins > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Number of bins must be between 2 and " + Short.MAX_VALUE);
+        }
+
+        int numAttributes = store.numAttributes();
+        double[][] cutPoints = new double[numAttributes][];
+        short[][] codes = new short[numAttributes][];
+
+        for (int j = 0; j < numAttributes; ++j) {
+            if (sortedPositions[j] == null) {
+                continue;
+            }
+
+            cutPoints[j] = quantileCutPoints(store, j, rows, sortedPositions[j], numBins);
+            codes[j] = new short[store.numRows()];
+
+            for (int i = 0; i < store.numRows(); ++i) {
+                codes[j][i] = binOf(cutPoints[j], store.value(i, j));
+            }
+        }
+
+        return new myBinning(cutPoints, codes);
+    }
+
+    /**
+     * walk the sorted values and close a bin once it holds its share of
+     * the rows, at the next change of value
+     */
+    private static double[] quantileCutPoints(myColumnStore store, int attributeIndex, int[] rows, int[] sorted, int numBins) {
+        double[] cuts = new double[numBins - 1];
+        int numCuts = 0;
+        double share = (double)sorted.length / numBins;
+        int inBin = 0;
+
+        for (int i = 0; i + 1 < sorted.length && numCuts < cuts.length; ++i) {
+            double value = store.value(rows[sorted[i]], attributeIndex);
+            double nextValue = store.value(rows[sorted[i + 1]], attributeIndex);
+            ++inBin;
+
+            if (inBin >= share && myModel.isSeparable(value, nextValue)) {
+                cuts[numCuts++] = (value + nextValue) / 2;
+                inBin = 0;
+            }
+        }
+
+        double[] result = new double[numCuts];
+        System.arraycopy(cuts, 0, result, 0, numCuts);
+
+        return result;
+    }
+
+    /**
+     * return the bin of a value, the amount of cut points it does not
+     * go left of
+     */
+    private static short binOf(double[] cuts, double value) {
+        if (Instance.isMissingValue(value)) {
+            return MISSING_CODE;
+        }
+
+        int low = 0;
+        int high = cuts.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (Utils.gr(cuts[middle], value)) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        return (short)low;
+    }
+
+    /**
+     * return whether the attribute is binned
+     */
+    public boolean isBinned(int attributeIndex) {
+        return cutPoints[attributeIndex] != null;
+    }
+
+    /**
+     * return the amount of bins of an attribute
+     */
+    public int numBins(int attributeIndex) {
+        return cutPoints[attributeIndex].length + 1;
+    }
+
+    /**
+     * return the bin of a row of the store, or MISSING_CODE
+     */
+    public int code(int row, int attributeIndex) {
+        return codes[attributeIndex][row];
+    }
+
+    /**
+     * return the cut point between bin and bin + 1
+     */
+    public double cutPoint(int attributeIndex, int bin) {
+        return cutPoints[attributeIndex][bin];
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Settings shared by every node while a tree is built: the pool the
+ * work may be spread over, the smallest partition for which a child
+ * subtree is worth its own task, for a tree of a random forest how many
+ * attributes every node draws, and the limits on the growth of the tree.
+ * The draws only repeat from run to run when the tree is built without
+ * a pool.
+ */
+public class myBuildContext {
+
+    public static final int DEFAULT_FORK_THRESHOLD = 1000;
+
+    private final ForkJoinPool pool;
+    private final int forkThreshold;
+    private final int numRandomAttributes;
+    private final Random random;
+    private final int maxDepth;
+    private final double minLeafWeight;
+
+    public myBuildContext(ForkJoinPool pool, int forkThreshold) {
+        this(pool, forkThreshold, 0, null);
+    }
+
+    /**
+     * create a context where every node chooses its split among
+     * numRandomAttributes attributes drawn with random, 0 uses them all
+     */
+    public myBuildContext(ForkJoinPool pool, int forkThreshold, int numRandomAttributes, Random random) {
+        this(pool, forkThreshold, numRandomAttributes, random, 0, 0);
+    }
+
+    /**
+     * create a context that also stops splitting at maxDepth, the root is
+     * depth 0, and only splits a node when at least two of its subsets
+     * weigh minLeafWeight. 0 leaves either one unlimited
+     */
+    public myBuildContext(ForkJoinPool pool, int forkThreshold, int numRandomAttributes, Random random,
+                          int maxDepth, double minLeafWeight) {
+        this.pool = pool;
+        this.forkThreshold = forkThreshold;
+        this.numRandomAttributes = numRandomAttributes;
+        this.random = random;
+        this.maxDepth = maxDepth;
+        this.minLeafWeight = minLeafWeight;
+    }
+
+    /**
+     * create a context that builds everything on the calling thread
+     */
+    public static myBuildContext sequential() {
+        return new myBuildContext(null, DEFAULT_FORK_THRESHOLD);
+    }
+
+    /**
+     * return the pool, or null when the build is sequential
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getForkThreshold() {
+        return forkThreshold;
+    }
+
+    public int getNumRandomAttributes() {
+        return numRandomAttributes;
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    /**
+     * return the depth at which nodes are no longer split, 0 for no limit
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public double getMinLeafWeight() {
+        return minLeafWeight;
+    }
+
+    /**
+     * return whether a node at the given depth may still be split
+     */
+    public boolean canSplitAt(int depth) {
+        return maxDepth <= 0 || depth < maxDepth;
+    }
+
+    /**
+     * return whether a subtree over the given number of rows should be
+     * built as its own task rather than inline
+     */
+    public boolean shouldFork(int numRows) {
+        return pool != null && numRows >= forkThreshold;
+    }
+
+    /**
+     * run the build inside the pool, so subtrees can be forked from it
+     */
+    public void invoke(Runnable build) {
+        if (pool == null) {
+            build.run();
+        } else {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    build.run();
+                }
+            });
+        }
+    }
+}
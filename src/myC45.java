@@ -1,48 +1,588 @@
 import weka.classifiers.Classifier;
 import weka.core.Instance;
 import weka.core.Instances;
-import weka.core.OptionHandler;
+import weka.core.Option;
+import weka.core.Utils;
 
 import java.util.Enumeration;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
 
 public class myC45 extends Classifier {
 
+    private static final int BATCH_BLOCK_SIZE = 1024;
+
     private myNode root = null;
+    private myImputer imputer = null;
+    private Instances header = null;
+    private myCompiledTree compiledTree = null;
+    private transient myCompiledTree batchCompiledTree = null;
+
+    private int numThreads = 1;
+    private int forkThreshold = myBuildContext.DEFAULT_FORK_THRESHOLD;
+    private boolean useCompiledTree = false;
+    private boolean spreadMissingValues = false;
+    private int numBins = 0;
+    private double confidence = 0;
+    private double errorThreshold = myNode.DEFAULT_ERROR_THRESHOLD;
+    private int maxDepth = 0;
+    private int minLeafInstances = 0;
+    private int maxLeaves = 0;
 
     public myC45() {
 
     }
 
+    /**
+     * Returns an enumeration describing the available options.
+     */
+    @Override
+    public Enumeration listOptions() {
+        Vector<Option> newVector = new Vector<>();
+
+        newVector.addElement(new Option(
+                "\tNumber of threads used to score the attributes of a node.\n" +
+                "\t0 uses every available processor. (default 1)",
+                "P", 1, "-P <number of threads>"));
+        newVector.addElement(new Option(
+                "\tSmallest number of rows for which a child subtree\n" +
+                "\tis built as its own task. (default " + myBuildContext.DEFAULT_FORK_THRESHOLD + ")",
+                "F", 1, "-F <number of rows>"));
+        newVector.addElement(new Option(
+                "\tCompile the tree into flat arrays after the build\n" +
+                "\tand predict with the compiled tree.",
+                "C", 0, "-C"));
+        newVector.addElement(new Option(
+                "\tSpread an instance with a missing value over every branch\n" +
+                "\tat prediction time, instead of replacing the value.",
+                "M", 0, "-M"));
+        newVector.addElement(new Option(
+                "\tBin every numeric attribute into at most this many quantile\n" +
+                "\tbins and find splits from per-bin class counts.\n" +
+                "\t0 searches the exact thresholds. (default 0)",
+                "H", 1, "-H <number of bins>"));
+        newVector.addElement(new Option(
+                "\tPrune with the pessimistic error estimate of C4.5 at this\n" +
+                "\tconfidence, at most 0.5. 0 prunes on the training error\n" +
+                "\tof the leaves instead. (default 0)",
+                "E", 1, "-E <confidence>"));
+        newVector.addElement(new Option(
+                "\tPrune a subtree unless it has this much less error\n" +
+                "\tthan a leaf. (default " + myNode.DEFAULT_ERROR_THRESHOLD + ")",
+                "T", 1, "-T <error threshold>"));
+        newVector.addElement(new Option(
+                "\tDo not split nodes at this depth, the root is depth 0.\n" +
+                "\t0 puts no limit on the depth. (default 0)",
+                "L", 1, "-L <maximum depth>"));
+        newVector.addElement(new Option(
+                "\tOnly split a node when at least two of its subsets weigh\n" +
+                "\tthis many instances, both sides of a numeric split. (default 0)",
+                "N", 1, "-N <minimum instances per leaf>"));
+        newVector.addElement(new Option(
+                "\tGrow the tree best first, splitting the leaf that gains\n" +
+                "\tthe most next, until it has this many leaves.\n" +
+                "\t0 grows it depth first without a limit. (default 0)",
+                "B", 1, "-B <maximum number of leaves>"));
+
+        Enumeration enu = super.listOptions();
+        while (enu.hasMoreElements()) {
+            newVector.addElement((Option)enu.nextElement());
+        }
+
+        return newVector.elements();
+    }
+
+    /**
+     * Parses a given list of options.
+     */
+    @Override
+    public void setOptions(String[] options) throws Exception {
+        String threads = Utils.getOption('P', options);
+        numThreads = threads.length() == 0 ? 1 : Integer.parseInt(threads);
+
+        String threshold = Utils.getOption('F', options);
+        forkThreshold = threshold.length() == 0 ? myBuildContext.DEFAULT_FORK_THRESHOLD : Integer.parseInt(threshold);
+
+        useCompiledTree = Utils.getFlag('C', options);
+        spreadMissingValues = Utils.getFlag('M', options);
+
+        String bins = Utils.getOption('H', options);
+        numBins = bins.length() == 0 ? 0 : Integer.parseInt(bins);
+
+        String pruningConfidence = Utils.getOption('E', options);
+        confidence = pruningConfidence.length() == 0 ? 0 : Double.parseDouble(pruningConfidence);
+
+        String pruningThreshold = Utils.getOption('T', options);
+        errorThreshold = pruningThreshold.length() == 0 ? myNode.DEFAULT_ERROR_THRESHOLD : Double.parseDouble(pruningThreshold);
+
+        String depth = Utils.getOption('L', options);
+        maxDepth = depth.length() == 0 ? 0 : Integer.parseInt(depth);
+
+        String leafInstances = Utils.getOption('N', options);
+        minLeafInstances = leafInstances.length() == 0 ? 0 : Integer.parseInt(leafInstances);
+
+        String leaves = Utils.getOption('B', options);
+        maxLeaves = leaves.length() == 0 ? 0 : Integer.parseInt(leaves);
+
+        super.setOptions(options);
+    }
+
+    /**
+     * Gets the current settings of the classifier.
+     */
+    @Override
+    public String[] getOptions() {
+        Vector<String> options = new Vector<>();
+
+        options.add("-P");
+        options.add("" + numThreads);
+        options.add("-F");
+        options.add("" + forkThreshold);
+
+        if (useCompiledTree) {
+            options.add("-C");
+        }
+
+        if (spreadMissingValues) {
+            options.add("-M");
+        }
+
+        options.add("-H");
+        options.add("" + numBins);
+        options.add("-E");
+        options.add("" + confidence);
+        options.add("-T");
+        options.add("" + errorThreshold);
+        options.add("-L");
+        options.add("" + maxDepth);
+        options.add("-N");
+        options.add("" + minLeafInstances);
+        options.add("-B");
+        options.add("" + maxLeaves);
+
+        for (String option : super.getOptions()) {
+            options.add(option);
+        }
+
+        return options.toArray(new String[0]);
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public int getForkThreshold() {
+        return forkThreshold;
+    }
+
+    public void setForkThreshold(int forkThreshold) {
+        this.forkThreshold = forkThreshold;
+    }
+
+    public boolean getUseCompiledTree() {
+        return useCompiledTree;
+    }
+
+    public void setUseCompiledTree(boolean useCompiledTree) {
+        this.useCompiledTree = useCompiledTree;
+    }
+
+    public boolean getSpreadMissingValues() {
+        return spreadMissingValues;
+    }
+
+    public void setSpreadMissingValues(boolean spreadMissingValues) {
+        this.spreadMissingValues = spreadMissingValues;
+    }
+
+    public int getNumBins() {
+        return numBins;
+    }
+
+    public void setNumBins(int numBins) {
+        this.numBins = numBins;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+        this.confidence = confidence;
+    }
+
+    public double getErrorThreshold() {
+        return errorThreshold;
+    }
+
+    public void setErrorThreshold(double errorThreshold) {
+        this.errorThreshold = errorThreshold;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMinLeafInstances() {
+        return minLeafInstances;
+    }
+
+    public void setMinLeafInstances(int minLeafInstances) {
+        this.minLeafInstances = minLeafInstances;
+    }
+
+    public int getMaxLeaves() {
+        return maxLeaves;
+    }
+
+    public void setMaxLeaves(int maxLeaves) {
+        this.maxLeaves = maxLeaves;
+    }
+
     @Override
     public void buildClassifier(Instances data) {
+        imputer = myImputer.build(data);
+        build(myColumnStore.create(data, imputer));
+    }
+
+    /**
+     * build the tree straight from a column store, for example one read
+     * by myArffLoader. The missing values of the store are replaced in place
+     */
+    public void buildClassifier(myColumnStore store) {
+        imputer = myImputer.build(store);
+        store.imputeMissing(imputer);
+        build(store);
+    }
+
+    /**
+     * grow and prune the tree on a store without missing values
+     */
+    private void build(myColumnStore store) {
+        long start = myMetrics.start();
+        header = store.getHeader();
+        compiledTree = null;
+        batchCompiledTree = null;
+
         root = new myNode();
-        root.buildClassifier(data);
+        mySubset subset = numBins > 0 ? mySubset.binned(store, numBins) : mySubset.presort(store);
+        ForkJoinPool pool = myForkJoin.createPool(numThreads);
+        myBuildContext context = new myBuildContext(pool, forkThreshold, 0, null, maxDepth, minLeafInstances);
+
+        try {
+            if (maxLeaves > 0) {
+                context.invoke(() -> root.buildBestFirst(subset, context, maxLeaves));
+            } else {
+                context.invoke(() -> root.buildClassifier(subset, context));
+            }
+        } finally {
+            myForkJoin.shutdown(pool);
+        }
 
         prune();
+
+        if (useCompiledTree) {
+            compiledTree = compile();
+        }
+
+        myMetrics.recordTraining(start);
     }
 
     @Override
     public double classifyInstance(Instance instance) {
-        if (root == null) {
-            throw new IllegalStateException("Classifier has not build yet");
-        }
+        checkBuilt();
+
+        long start = myMetrics.start();
+        double result = useCompiled(instance) ? compiledTree.classifyInstance(instance) : spreadClassify(prepare(instance));
+        myMetrics.recordPrediction(start);
 
-        return  root.classifyInstance(instance);
+        return result;
     }
 
     @Override
     public double[] distributionForInstance(Instance instance) {
+        double[] result = new double[instance.numClasses()];
+        distributionForInstance(instance, result);
+
+        return result;
+    }
+
+    /**
+     * write the class distribution of an instance into result
+     */
+    public void distributionForInstance(Instance instance, double[] result) {
+        checkBuilt();
+
+        long start = myMetrics.start();
+
+        if (useCompiled(instance)) {
+            compiledTree.distributionForInstance(instance, result);
+        } else {
+            spreadDistribution(prepare(instance), result);
+        }
+
+        myMetrics.recordPrediction(start);
+    }
+
+    /**
+     * return the predicted class of every instance. The instances are
+     * handled in blocks, spread over the threads set with -P
+     */
+    public double[] classifyInstances(Instances data) {
+        long start = myMetrics.start();
+        myCompiledTree tree = batchTree();
+        double[] result = new double[data.numInstances()];
+
+        myForkJoin.forEachBlock(numThreads, result.length, BATCH_BLOCK_SIZE, (from, to) -> {
+            for (int i = from; i < to; ++i) {
+                Instance instance = data.instance(i);
+
+                if (spreadMissingValues && instance.hasMissingValue()) {
+                    result[i] = spreadClassify(instance);
+                } else {
+                    result[i] = tree.classifyInstance(instance);
+                }
+            }
+        });
+
+        myMetrics.recordBatch(start, result.length);
+
+        return result;
+    }
+
+    /**
+     * return the class distribution of every instance. The instances
+     * are handled in blocks, spread over the threads set with -P
+     */
+    public double[][] distributionsForInstances(Instances data) {
+        long start = myMetrics.start();
+        myCompiledTree tree = batchTree();
+        double[][] result = new double[data.numInstances()][data.numClasses()];
+
+        myForkJoin.forEachBlock(numThreads, result.length, BATCH_BLOCK_SIZE, (from, to) -> {
+            for (int i = from; i < to; ++i) {
+                Instance instance = data.instance(i);
+
+                if (spreadMissingValues && instance.hasMissingValue()) {
+                    spreadDistribution(instance, result[i]);
+                } else {
+                    tree.distributionForInstance(instance, result[i]);
+                }
+            }
+        });
+
+        myMetrics.recordBatch(start, result.length);
+
+        return result;
+    }
+
+    /**
+     * return the predicted class of every row of attribute values,
+     * laid out like the training header with NaN for a missing value.
+     * With -M a row with a missing value is spread over the branches,
+     * as by classifyInstances
+     */
+    public double[] classifyRows(double[][] rows) {
+        long start = myMetrics.start();
+        myCompiledTree tree = batchTree();
+        double[] result = new double[rows.length];
+
+        myForkJoin.forEachBlock(numThreads, rows.length, BATCH_BLOCK_SIZE, (from, to) -> {
+            for (int i = from; i < to; ++i) {
+                if (spreadMissingValues && hasMissingValue(rows[i])) {
+                    result[i] = spreadClassify(toInstance(rows[i]));
+                } else {
+                    result[i] = tree.classifyRow(rows[i]);
+                }
+            }
+        });
+
+        myMetrics.recordBatch(start, rows.length);
+
+        return result;
+    }
+
+    /**
+     * return the class distribution of every row of attribute values,
+     * laid out like the training header with NaN for a missing value.
+     * With -M a row with a missing value is spread over the branches,
+     * as by distributionsForInstances
+     */
+    public double[][] distributionsForRows(double[][] rows) {
+        long start = myMetrics.start();
+        myCompiledTree tree = batchTree();
+        double[][] result = new double[rows.length][tree.getNumClasses()];
+
+        myForkJoin.forEachBlock(numThreads, rows.length, BATCH_BLOCK_SIZE, (from, to) -> {
+            for (int i = from; i < to; ++i) {
+                if (spreadMissingValues && hasMissingValue(rows[i])) {
+                    spreadDistribution(toInstance(rows[i]), result[i]);
+                } else {
+                    tree.distributionForRow(rows[i], result[i]);
+                }
+            }
+        });
+
+        myMetrics.recordBatch(start, rows.length);
+
+        return result;
+    }
+
+    /**
+     * return the compiled tree, when -C is not set compiled by the first
+     * batch and kept for the next ones until the tree changes
+     */
+    private synchronized myCompiledTree batchTree() {
+        checkBuilt();
+
+        if (compiledTree != null) {
+            return compiledTree;
+        }
+        if (batchCompiledTree == null) {
+            batchCompiledTree = compile();
+        }
+
+        return batchCompiledTree;
+    }
+
+    /**
+     * a tree read by myTreeFile has no nodes, only the compiled tree
+     */
+    private void checkBuilt() {
+        if (root == null && compiledTree == null) {
+            throw new IllegalStateException("Classifier has not build yet");
+        }
+    }
+
+    /**
+     * predict an instance whose missing values are spread over the branches,
+     * with the node tree or, when there is none, the compiled tree
+     */
+    private double spreadClassify(Instance instance) {
+        return root != null ? root.classifyInstance(instance) : compiledTree.spreadClassifyInstance(instance);
+    }
+
+    private void spreadDistribution(Instance instance, double[] result) {
+        if (root != null) {
+            root.distributionForInstance(instance, result);
+        } else {
+            compiledTree.spreadDistributionForInstance(instance, result);
+        }
+    }
+
+    /**
+     * return whether a row has a missing value other than the class,
+     * like Instance.hasMissingValue
+     */
+    private boolean hasMissingValue(double[] row) {
+        for (int j = 0; j < row.length; ++j) {
+            if (j != header.classIndex() && Instance.isMissingValue(row[j])) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * return a row as an instance of the training header
+     */
+    private Instance toInstance(double[] row) {
+        Instance instance = new Instance(1, row);
+        instance.setDataset(header);
+
+        return instance;
+    }
+
+    /**
+     * the compiled tree replaces missing values, so it is not used for
+     * them when they have to be spread over the branches
+     */
+    private boolean useCompiled(Instance instance) {
+        return compiledTree != null && !(spreadMissingValues && instance.hasMissingValue());
+    }
+
+    /**
+     * replace the missing values of an instance, unless they are spread
+     * over the branches
+     */
+    private Instance prepare(Instance instance) {
+        return spreadMissingValues || imputer == null ? instance : imputer.impute(instance);
+    }
+
+    /**
+     * flatten the trained tree into arrays for fast prediction,
+     * missing values are replaced the same way as by the imputer
+     */
+    public myCompiledTree compile() {
         if (root == null) {
+            if (compiledTree != null) {
+                return compiledTree;
+            }
             throw new IllegalStateException("Classifier has not build yet");
         }
 
-        return root.distributionForInstance(instance);
+        myCompiledTree.Builder builder = new myCompiledTree.Builder(header.numClasses());
+        root.compileInto(builder, 0, header);
+
+        return builder.build(imputer.getValues());
     }
 
     /**
      * method to post prune the model
      */
     public void prune() {
-        root.prune();
+        if (root == null) {
+            throw new IllegalStateException("Classifier has not build yet");
+        }
+
+        root.prune(confidence, errorThreshold);
+        batchCompiledTree = null;
+    }
+
+    /**
+     * return the header of the training data
+     */
+    Instances getHeader() {
+        return header;
+    }
+
+    /**
+     * create a classifier that predicts with a compiled tree only,
+     * used by myTreeFile
+     */
+    static myC45 fromCompiledTree(Instances header, myCompiledTree tree, boolean spreadMissingValues) {
+        myC45 result = new myC45();
+        result.header = header;
+        result.compiledTree = tree;
+        result.useCompiledTree = true;
+        result.spreadMissingValues = spreadMissingValues;
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        if (root == null && compiledTree != null) {
+            return "myC45 compiled tree\n------------------\n"
+                    + "\nNumber of Leaves  : \t" + compiledTree.numLeaves()
+                    + "\n\nSize of the tree : \t" + compiledTree.numNodes() + "\n";
+        }
+
+        if (root == null) {
+            return "myC45: No model built yet.";
+        }
+
+        return "myC45 pruned tree\n------------------\n" + root.toString(header)
+                + "\n\nNumber of Leaves  : \t" + root.numLeaves()
+                + "\n\nSize of the tree : \t" + root.numNodes() + "\n";
     }
 }
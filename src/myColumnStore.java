@@ -0,0 +1,264 @@
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Column-major copy of the training data in primitive arrays.
+ * Nominal attributes are kept as int codes, numeric attributes as
+ * doubles, and the class and weight of every row in their own arrays.
+ * The store is filled once, from Instances or by myArffLoader, and
+ * only read while the tree is built.
+ * When every instance is a SparseInstance the store also keeps, per row,
+ * the attributes that were stored, so counts can skip the zero values.
+ */
+public class myColumnStore implements Serializable {
+
+    public static final int MISSING_CODE = -1;
+
+    private final Instances header;
+    private final int[][] codes;
+    private final double[][] values;
+    private final int[] classCodes;
+    private final double[] weights;
+
+    // [row], ascending indices of the stored attributes other than the class, null when dense
+    private final int[][] storedAttributes;
+
+    private myColumnStore(Instances header, int[][] codes, double[][] values, int[] classCodes, double[] weights,
+                          int[][] storedAttributes) {
+        this.header = header;
+        this.codes = codes;
+        this.values = values;
+        this.classCodes = classCodes;
+        this.weights = weights;
+        this.storedAttributes = storedAttributes;
+    }
+
+    /**
+     * wrap columns that were filled elsewhere. The header has no
+     * instances and its class set, codes holds the nominal columns and
+     * values the others, both null for the class, and storedAttributes
+     * is null unless the rows are sparse
+     */
+    public static myColumnStore fromColumns(Instances header, int[][] codes, double[][] values, int[] classCodes,
+                                            double[] weights, int[][] storedAttributes) {
+        return new myColumnStore(header, codes, values, classCodes, weights, storedAttributes);
+    }
+
+    /**
+     * copy the instances into columns, the class attribute is kept
+     * only in the class column
+     */
+    public static myColumnStore create(Instances instances) {
+        return create(instances, null);
+    }
+
+    /**
+     * copy the instances into columns, missing values of instances with
+     * a known class are replaced by the imputer on the way in, the
+     * instances themselves are left as they are
+     */
+    public static myColumnStore create(Instances instances, myImputer imputer) {
+        int numAttributes = instances.numAttributes();
+        int numInstances = instances.numInstances();
+        int classIndex = instances.classIndex();
+
+        int[][] codes = new int[numAttributes][];
+        double[][] values = new double[numAttributes][];
+        int[] classCodes = new int[numInstances];
+        double[] weights = new double[numInstances];
+
+        for (int j = 0; j < numAttributes; ++j) {
+            if (j == classIndex) {
+                continue;
+            }
+
+            if (instances.attribute(j).isNominal()) {
+                codes[j] = new int[numInstances];
+            } else {
+                values[j] = new double[numInstances];
+            }
+        }
+
+        for (int i = 0; i < numInstances; ++i) {
+            Instance instance = instances.instance(i);
+
+            boolean impute = imputer != null && !instance.classIsMissing();
+
+            // only the stored values, the columns already hold 0 for the others
+            for (int k = 0; k < instance.numValues(); ++k) {
+                int j = instance.index(k);
+                double value = instance.valueSparse(k);
+
+                if (impute && j != classIndex && Instance.isMissingValue(value)) {
+                    value = imputer.value(j, (int)instance.classValue());
+                }
+
+                if (codes[j] != null) {
+                    codes[j][i] = Instance.isMissingValue(value) ? MISSING_CODE : (int)value;
+                } else if (values[j] != null) {
+                    values[j][i] = value;
+                }
+            }
+
+            classCodes[i] = instance.classIsMissing() ? MISSING_CODE : (int)instance.classValue();
+            weights[i] = instance.weight();
+        }
+
+        int[][] storedAttributes = isSparse(instances) ? storedAttributes(instances) : null;
+
+        return new myColumnStore(new Instances(instances, 0), codes, values, classCodes, weights, storedAttributes);
+    }
+
+    /**
+     * replace the missing values of the rows with a known class by the
+     * imputer, in place
+     */
+    public void imputeMissing(myImputer imputer) {
+        for (int j = 0; j < numAttributes(); ++j) {
+            for (int i = 0; i < numRows(); ++i) {
+                if (classCodes[i] == MISSING_CODE) {
+                    continue;
+                }
+
+                if (codes[j] != null && codes[j][i] == MISSING_CODE) {
+                    codes[j][i] = (int)imputer.value(j, classCodes[i]);
+                } else if (values[j] != null && Instance.isMissingValue(values[j][i])) {
+                    values[j][i] = imputer.value(j, classCodes[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * return whether there are instances and all of them are sparse
+     */
+    private static boolean isSparse(Instances instances) {
+        if (instances.numInstances() == 0) {
+            return false;
+        }
+
+        for (int i = 0; i < instances.numInstances(); ++i) {
+            if (!(instances.instance(i) instanceof SparseInstance)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * collect the indices of the stored values of every instance,
+     * the class is left out
+     */
+    private static int[][] storedAttributes(Instances instances) {
+        int classIndex = instances.classIndex();
+        int[][] result = new int[instances.numInstances()][];
+
+        for (int i = 0; i < result.length; ++i) {
+            Instance instance = instances.instance(i);
+            int[] stored = new int[instance.numValues()];
+            int numStored = 0;
+
+            for (int k = 0; k < instance.numValues(); ++k) {
+                if (instance.index(k) != classIndex) {
+                    stored[numStored++] = instance.index(k);
+                }
+            }
+
+            result[i] = numStored == stored.length ? stored : Arrays.copyOf(stored, numStored);
+        }
+
+        return result;
+    }
+
+    /**
+     * return the dataset header of the store
+     */
+    public Instances getHeader() {
+        return header;
+    }
+
+    public Attribute attribute(int attributeIndex) {
+        return header.attribute(attributeIndex);
+    }
+
+    public int numAttributes() {
+        return header.numAttributes();
+    }
+
+    public int classIndex() {
+        return header.classIndex();
+    }
+
+    public int numClasses() {
+        return header.numClasses();
+    }
+
+    /**
+     * return the total amount of rows in the store
+     */
+    public int numRows() {
+        return classCodes.length;
+    }
+
+    /**
+     * return whether the store was filled from sparse instances, an
+     * attribute that is not stored for a row has the value 0 there
+     */
+    public boolean isSparse() {
+        return storedAttributes != null;
+    }
+
+    /**
+     * return the ascending indices of the attributes stored for a row
+     * of a sparse store, the class not included
+     */
+    public int[] storedAttributes(int row) {
+        return storedAttributes[row];
+    }
+
+    /**
+     * return the code of a nominal attribute, or MISSING_CODE
+     */
+    public int code(int row, int attributeIndex) {
+        return codes[attributeIndex][row];
+    }
+
+    /**
+     * return the codes of a nominal attribute for every row
+     */
+    public int[] codes(int attributeIndex) {
+        return codes[attributeIndex];
+    }
+
+    /**
+     * return the value of an attribute the same way Instance.value does
+     */
+    public double value(int row, int attributeIndex) {
+        if (codes[attributeIndex] != null) {
+            int code = codes[attributeIndex][row];
+            return code == MISSING_CODE ? Instance.missingValue() : code;
+        } else {
+            return values[attributeIndex][row];
+        }
+    }
+
+    /**
+     * return the class code of a row, or MISSING_CODE
+     */
+    public int classCode(int row) {
+        return classCodes[row];
+    }
+
+    /**
+     * return the weight of a row
+     */
+    public double weight(int row) {
+        return weights[row];
+    }
+}
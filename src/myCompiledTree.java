@@ -0,0 +1,442 @@
+import weka.core.Instance;
+import weka.core.Utils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A trained tree flattened into parallel arrays for prediction.
+ * Every node has an attribute index (-1 for a leaf), a threshold (NaN
+ * for a nominal split) and an offset, which is the slot of its first
+ * child for a split and the leaf number for a leaf. The children of a
+ * node sit next to each other, so a nominal branch is offset + value
+ * and a numeric one offset + 0 or 1. The class distributions of all
+ * leaves are kept in one array, numClasses values per leaf. A tree of
+ * myC45 also keeps the weight of every branch, so an instance with a
+ * missing value can be spread over all branches instead.
+ */
+public class myCompiledTree implements Serializable {
+
+    private final int numClasses;
+    private final int[] attribute;
+    private final double[] threshold;
+    private final int[] offset;
+    private final double[] leafDistributions;
+    private final double[] leafClass;
+
+    // replacement of a missing value per attribute, null when missing values are not allowed
+    private final double[] missingValues;
+
+    // weight of the branch that leads to every node and number of children of every split, null when not kept
+    private final double[] branchWeight;
+    private final int[] numChildren;
+
+    private myCompiledTree(Builder builder, double[] missingValues) {
+        this.numClasses = builder.numClasses;
+        this.attribute = Arrays.copyOf(builder.attribute, builder.numNodes);
+        this.threshold = Arrays.copyOf(builder.threshold, builder.numNodes);
+        this.offset = Arrays.copyOf(builder.offset, builder.numNodes);
+        this.leafDistributions = Arrays.copyOf(builder.leafDistributions, builder.numLeaves * numClasses);
+        this.leafClass = Arrays.copyOf(builder.leafClass, builder.numLeaves);
+        this.missingValues = missingValues;
+        this.branchWeight = builder.branchWeight == null ? null : Arrays.copyOf(builder.branchWeight, builder.numNodes);
+        this.numChildren = builder.numChildren == null ? null : Arrays.copyOf(builder.numChildren, builder.numNodes);
+    }
+
+    private myCompiledTree(int numClasses, int[] attribute, double[] threshold, int[] offset, double[] leafDistributions,
+                           double[] leafClass, double[] missingValues, double[] branchWeight, int[] numChildren) {
+        this.numClasses = numClasses;
+        this.attribute = attribute;
+        this.threshold = threshold;
+        this.offset = offset;
+        this.leafDistributions = leafDistributions;
+        this.leafClass = leafClass;
+        this.missingValues = missingValues;
+        this.branchWeight = branchWeight;
+        this.numChildren = numChildren;
+    }
+
+    /**
+     * return the leaf number the instance ends up in
+     */
+    public int leafOf(Instance instance) {
+        int node = 0;
+        int numSplits = 0;
+
+        while (attribute[node] >= 0) {
+            node = child(node, instance.value(attribute[node]));
+            ++numSplits;
+        }
+
+        myMetrics.recordPath(numSplits);
+        return offset[node];
+    }
+
+    /**
+     * return the leaf number a row of attribute values ends up in, the
+     * row is laid out like the training header and NaN means missing
+     */
+    public int leafOf(double[] row) {
+        int node = 0;
+        int numSplits = 0;
+
+        while (attribute[node] >= 0) {
+            node = child(node, row[attribute[node]]);
+            ++numSplits;
+        }
+
+        myMetrics.recordPath(numSplits);
+        return offset[node];
+    }
+
+    /**
+     * return the child of a split node the value goes to
+     */
+    private int child(int node, double value) {
+        if (Instance.isMissingValue(value)) {
+            if (missingValues == null) {
+                throw new IllegalArgumentException("Missing value for attribute " + attribute[node]);
+            }
+            value = missingValues[attribute[node]];
+        }
+
+        if (Double.isNaN(threshold[node])) {
+            return offset[node] + (int)value;
+        } else {
+            return offset[node] + (Utils.gr(threshold[node], value) ? 0 : 1);
+        }
+    }
+
+    /**
+     * return the class predicted for the instance
+     */
+    public double classifyInstance(Instance instance) {
+        return leafClass[leafOf(instance)];
+    }
+
+    /**
+     * return the class distribution for the instance in a new array
+     */
+    public double[] distributionForInstance(Instance instance) {
+        double[] result = new double[numClasses];
+        distributionForInstance(instance, result);
+        return result;
+    }
+
+    /**
+     * write the class distribution for the instance into result,
+     * nothing is allocated
+     */
+    public void distributionForInstance(Instance instance, double[] result) {
+        System.arraycopy(leafDistributions, leafOf(instance) * numClasses, result, 0, numClasses);
+    }
+
+    /**
+     * return the class predicted for the instance when a missing value
+     * sends it down every branch, see spreadDistributionForInstance
+     */
+    public double spreadClassifyInstance(Instance instance) {
+        double[] distribution = new double[numClasses];
+        spreadDistributionForInstance(instance, distribution);
+
+        double maxProbability = -1;
+        int maxIndex = -1;
+
+        for (int i = 0; i < numClasses; ++i) {
+            if (Utils.gr(distribution[i], maxProbability)) {
+                maxIndex = i;
+                maxProbability = distribution[i];
+            }
+        }
+
+        return maxIndex;
+    }
+
+    /**
+     * write the class distribution for the instance into result. When a
+     * split value is missing the instance goes down every branch with
+     * the weight of that branch
+     */
+    public void spreadDistributionForInstance(Instance instance, double[] result) {
+        Arrays.fill(result, 0);
+        myMetrics.recordPath(addDistribution(0, instance, 1, result));
+    }
+
+    /**
+     * add the weighted leaf distributions the instance reaches from a node
+     * to result, and return the number of splits it went through
+     */
+    private int addDistribution(int node, Instance instance, double weight, double[] result) {
+        int numSplits = 0;
+
+        while (attribute[node] >= 0) {
+            ++numSplits;
+            double value = instance.value(attribute[node]);
+
+            if (Instance.isMissingValue(value)) {
+                if (branchWeight == null) {
+                    throw new IllegalStateException("Branch weights are not kept in this tree");
+                }
+
+                for (int i = 0; i < numChildren[node]; ++i) {
+                    int child = offset[node] + i;
+
+                    if (Utils.gr(branchWeight[child], 0)) {
+                        numSplits += addDistribution(child, instance, weight * branchWeight[child], result);
+                    }
+                }
+                return numSplits;
+            }
+
+            node = child(node, value);
+        }
+
+        int from = offset[node] * numClasses;
+        for (int i = 0; i < numClasses; ++i) {
+            result[i] += weight * leafDistributions[from + i];
+        }
+
+        return numSplits;
+    }
+
+    /**
+     * return the class predicted for a row of attribute values
+     */
+    public double classifyRow(double[] row) {
+        return leafClass[leafOf(row)];
+    }
+
+    /**
+     * write the class distribution for a row of attribute values into
+     * result, nothing is allocated
+     */
+    public void distributionForRow(double[] row, double[] result) {
+        System.arraycopy(leafDistributions, leafOf(row) * numClasses, result, 0, numClasses);
+    }
+
+    /**
+     * return the total amount of nodes, leaves included
+     */
+    public int numNodes() {
+        return attribute.length;
+    }
+
+    /**
+     * return the total amount of leaves
+     */
+    public int numLeaves() {
+        return leafClass.length;
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    /**
+     * write the arrays of the tree in the layout read back by read
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(numClasses);
+        out.writeInt(attribute.length);
+        out.writeInt(leafClass.length);
+
+        writeInts(out, attribute);
+        writeInts(out, offset);
+        writeDoubles(out, threshold);
+        writeDoubles(out, leafDistributions);
+        writeDoubles(out, leafClass);
+
+        out.writeBoolean(missingValues != null);
+        if (missingValues != null) {
+            out.writeInt(missingValues.length);
+            writeDoubles(out, missingValues);
+        }
+
+        out.writeBoolean(branchWeight != null);
+        if (branchWeight != null) {
+            writeInts(out, numChildren);
+            writeDoubles(out, branchWeight);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        buffer.asIntBuffer().put(values);
+        out.write(buffer.array());
+    }
+
+    private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 8);
+        buffer.asDoubleBuffer().put(values);
+        out.write(buffer.array());
+    }
+
+    /**
+     * read a tree written by write, the buffer is left after it
+     */
+    static myCompiledTree read(ByteBuffer in) throws IOException {
+        int numClasses = in.getInt();
+        int numNodes = in.getInt();
+        int numLeaves = in.getInt();
+
+        if (numClasses < 1 || numNodes < 1 || numLeaves < 1 || numLeaves > numNodes) {
+            throw new IOException("Corrupt tree: " + numNodes + " nodes, " + numLeaves + " leaves, " + numClasses + " classes");
+        }
+
+        int[] attribute = readInts(in, numNodes);
+        int[] offset = readInts(in, numNodes);
+        double[] threshold = readDoubles(in, numNodes);
+        double[] leafDistributions = readDoubles(in, numLeaves * numClasses);
+        double[] leafClass = readDoubles(in, numLeaves);
+        double[] missingValues = in.get() != 0 ? readDoubles(in, in.getInt()) : null;
+        double[] branchWeight = null;
+        int[] numChildren = null;
+
+        if (in.get() != 0) {
+            numChildren = readInts(in, numNodes);
+            branchWeight = readDoubles(in, numNodes);
+        }
+
+        return new myCompiledTree(numClasses, attribute, threshold, offset, leafDistributions, leafClass,
+                missingValues, branchWeight, numChildren);
+    }
+
+    private static int[] readInts(ByteBuffer in, int length) throws IOException {
+        if (length < 0 || length > in.remaining() / 4) {
+            throw new IOException("Corrupt tree: " + length + " values expected");
+        }
+
+        int[] result = new int[length];
+        in.asIntBuffer().get(result);
+        in.position(in.position() + length * 4);
+
+        return result;
+    }
+
+    private static double[] readDoubles(ByteBuffer in, int length) throws IOException {
+        if (length < 0 || length > in.remaining() / 8) {
+            throw new IOException("Corrupt tree: " + length + " values expected");
+        }
+
+        double[] result = new double[length];
+        in.asDoubleBuffer().get(result);
+        in.position(in.position() + length * 8);
+
+        return result;
+    }
+
+    /**
+     * Collects the nodes of a tree. The root is slot 0, and a split
+     * reserves consecutive slots for its children before they are filled.
+     */
+    public static class Builder {
+
+        private final int numClasses;
+
+        private int[] attribute = new int[16];
+        private double[] threshold = new double[16];
+        private int[] offset = new int[16];
+        private int numNodes = 1;
+
+        private double[] leafDistributions;
+        private double[] leafClass = new double[16];
+        private int numLeaves = 0;
+
+        private double[] branchWeight;
+        private int[] numChildren;
+
+        public Builder(int numClasses) {
+            this.numClasses = numClasses;
+            this.leafDistributions = new double[16 * numClasses];
+        }
+
+        /**
+         * reserve slots for the children of a split, return the first one
+         */
+        public int reserve(int numChildren) {
+            int first = numNodes;
+            numNodes += numChildren;
+
+            if (numNodes > attribute.length) {
+                int capacity = Math.max(numNodes, attribute.length * 2);
+                attribute = Arrays.copyOf(attribute, capacity);
+                threshold = Arrays.copyOf(threshold, capacity);
+                offset = Arrays.copyOf(offset, capacity);
+
+                if (branchWeight != null) {
+                    branchWeight = Arrays.copyOf(branchWeight, capacity);
+                    this.numChildren = Arrays.copyOf(this.numChildren, capacity);
+                }
+            }
+
+            return first;
+        }
+
+        /**
+         * fill a slot with a nominal split
+         */
+        public void setNominalSplit(int slot, int attributeIndex, int firstChild) {
+            attribute[slot] = attributeIndex;
+            threshold[slot] = Double.NaN;
+            offset[slot] = firstChild;
+        }
+
+        /**
+         * fill a slot with a numeric split, values below the split point
+         * go to the first child
+         */
+        public void setNumericSplit(int slot, int attributeIndex, double splitPoint, int firstChild) {
+            attribute[slot] = attributeIndex;
+            threshold[slot] = splitPoint;
+            offset[slot] = firstChild;
+        }
+
+        /**
+         * keep the weight of every branch of the split in slot, the
+         * split has to be set first
+         */
+        public void setBranchWeights(int slot, List<Double> weights) {
+            if (branchWeight == null) {
+                branchWeight = new double[attribute.length];
+                numChildren = new int[attribute.length];
+                branchWeight[0] = 1;
+            }
+
+            numChildren[slot] = weights.size();
+
+            for (int i = 0; i < weights.size(); ++i) {
+                branchWeight[offset[slot] + i] = weights.get(i);
+            }
+        }
+
+        /**
+         * fill a slot with a leaf
+         */
+        public void setLeaf(int slot, double[] distribution, double predictedClass) {
+            if (numLeaves == leafClass.length) {
+                leafClass = Arrays.copyOf(leafClass, numLeaves * 2);
+                leafDistributions = Arrays.copyOf(leafDistributions, numLeaves * 2 * numClasses);
+            }
+
+            attribute[slot] = -1;
+            threshold[slot] = Double.NaN;
+            offset[slot] = numLeaves;
+
+            System.arraycopy(distribution, 0, leafDistributions, numLeaves * numClasses, numClasses);
+            leafClass[numLeaves] = predictedClass;
+            ++numLeaves;
+        }
+
+        /**
+         * return the compiled tree, missing values are replaced by
+         * missingValues or rejected when it is null
+         */
+        public myCompiledTree build(double[] missingValues) {
+            return new myCompiledTree(this, missingValues);
+        }
+    }
+}
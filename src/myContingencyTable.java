@@ -0,0 +1,158 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntPredicate;
+
+/**
+ * The weight of every class per value of several nominal attributes over
+ * the rows of a node, in one flat array. Every counted attribute has a
+ * block of numValues + 1 cells (the last one for missing values) of
+ * numClasses + 1 weights (the last one the total of the cell), so an
+ * attribute is laid out as [offset + value * (numClasses + 1) + class].
+ * The class codes and weights of the rows are gathered once and every
+ * attribute column is then counted in one sequential sweep, which is the
+ * order the column store keeps its values in.
+ */
+public class myContingencyTable {
+
+    private final int numClasses;
+    private final int[] numValues;
+    private final int[] offsets;
+    private final double[] counts;
+    private final double[] classCounts;
+    private double total;
+
+    private myContingencyTable(int numClasses, int[] numValues, int[] offsets, int size) {
+        this.numClasses = numClasses;
+        this.numValues = numValues;
+        this.offsets = offsets;
+        this.counts = new double[size];
+        this.classCounts = new double[numClasses];
+    }
+
+    /**
+     * count rows[from, to) of the store for every attribute accepted by
+     * counted, which has to be nominal. The weight of rows[i] is
+     * weights[i] or, when weights is null, its weight in the store. The
+     * attributes are counted in parallel on the pool, if there is one
+     */
+    public static myContingencyTable count(myColumnStore store, int[] rows, int from, int to, double[] weights,
+                                           IntPredicate counted, ForkJoinPool pool) {
+        int numClasses = store.numClasses();
+        int numAttributes = store.numAttributes();
+        int[] numValues = new int[numAttributes];
+        int[] offsets = new int[numAttributes];
+        int size = 0;
+
+        for (int j = 0; j < numAttributes; ++j) {
+            if (counted.test(j)) {
+                numValues[j] = store.attribute(j).numValues();
+                offsets[j] = size;
+                size += (numValues[j] + 1) * (numClasses + 1);
+            } else {
+                offsets[j] = -1;
+            }
+        }
+
+        myContingencyTable table = new myContingencyTable(numClasses, numValues, offsets, size);
+        int[] classCodes = new int[to - from];
+        double[] rowWeights = new double[to - from];
+
+        for (int i = from; i < to; ++i) {
+            int classCode = store.classCode(rows[i]);
+            double weight = weights == null ? store.weight(rows[i]) : weights[i];
+
+            classCodes[i - from] = classCode;
+            rowWeights[i - from] = weight;
+            table.classCounts[classCode] += weight;
+            table.total += weight;
+        }
+
+        myForkJoin.forEach(pool, numAttributes, j -> {
+            if (offsets[j] >= 0) {
+                table.countAttribute(j, store.codes(j), rows, from, classCodes, rowWeights);
+            }
+        });
+
+        return table;
+    }
+
+    /**
+     * add every row to the cell of its value of one attribute, each
+     * attribute has its own block so the attributes can be counted at once
+     */
+    private void countAttribute(int attributeIndex, int[] codes, int[] rows, int from, int[] classCodes, double[] rowWeights) {
+        int stride = numClasses + 1;
+        int offset = offsets[attributeIndex];
+        int missingCell = offset + numValues[attributeIndex] * stride;
+
+        for (int i = 0; i < classCodes.length; ++i) {
+            int code = codes[rows[from + i]];
+            int cell = code == myColumnStore.MISSING_CODE ? missingCell : offset + code * stride;
+
+            counts[cell + classCodes[i]] += rowWeights[i];
+            counts[cell + numClasses] += rowWeights[i];
+        }
+    }
+
+    public int numClasses() {
+        return numClasses;
+    }
+
+    /**
+     * return the number of values of a counted attribute
+     */
+    public int numValues(int attributeIndex) {
+        return numValues[attributeIndex];
+    }
+
+    /**
+     * return the flat array of counts, it must not be changed
+     */
+    public double[] counts() {
+        return counts;
+    }
+
+    /**
+     * return the index in counts of the first class of a value of an
+     * attribute, MISSING_CODE gives the cell of the missing values
+     */
+    public int offset(int attributeIndex, int value) {
+        int cell = value == myColumnStore.MISSING_CODE ? numValues[attributeIndex] : value;
+
+        return offsets[attributeIndex] + cell * (numClasses + 1);
+    }
+
+    /**
+     * return the weight of a class among the rows with a value of an attribute
+     */
+    public double count(int attributeIndex, int value, int classIndex) {
+        return counts[offset(attributeIndex, value) + classIndex];
+    }
+
+    /**
+     * return the weight of the rows with a value of an attribute
+     */
+    public double weight(int attributeIndex, int value) {
+        return counts[offset(attributeIndex, value) + numClasses];
+    }
+
+    /**
+     * return the weight of the rows where the attribute is missing
+     */
+    public double missingWeight(int attributeIndex) {
+        return weight(attributeIndex, myColumnStore.MISSING_CODE);
+    }
+
+    /**
+     * return the weight of every class over all rows, the array must not be changed
+     */
+    public double[] classCounts() {
+        return classCounts;
+    }
+
+    /**
+     * return the weight of all rows
+     */
+    public double total() {
+        return total;
+    }
+}
@@ -0,0 +1,195 @@
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * k-fold cross-validation that trains and tests the folds at the same
+ * time. The data is shuffled and stratified once, and every fold is a
+ * list of row indices into that one dataset: a training fold shares the
+ * Instance objects instead of copying them, and a test fold is only
+ * read. The predictions of the folds are then fed into the Evaluation
+ * fold by fold, in the order Evaluation.crossValidateModel uses, so the
+ * folds, priors and every statistic of the report are the same as there.
+ *
+ * The classifier must not change the instances it is trained on, since
+ * they are shared by all folds (Weka's classifiers copy what they change).
+ */
+public class myCrossValidation {
+
+    private myCrossValidation() {
+
+    }
+
+    /**
+     * cross-validate a copy of the classifier per fold and add the result
+     * to the evaluation, like evaluation.crossValidateModel(classifier,
+     * data, numFolds, random). numThreads works as for myForkJoin.createPool
+     */
+    public static void crossValidateModel(Evaluation evaluation, Classifier classifier, Instances data, int numFolds,
+                                          Random random, int numThreads) throws Exception {
+        crossValidateModel(evaluation, classifier, data, numFolds, random, numThreads, null);
+    }
+
+    /**
+     * cross-validate like crossValidateModel above, taking the classifier
+     * of every fold from the cache when it was trained on the same rows
+     * with the same options before. The folds only depend on the data,
+     * numFolds and random, so a rerun with one changed option retrains
+     * only the classifiers of that option
+     */
+    public static void crossValidateModel(Evaluation evaluation, Classifier classifier, Instances data, int numFolds,
+                                          Random random, int numThreads, myModelCache cache) throws Exception {
+        if (numFolds < 2) {
+            throw new IllegalArgumentException("Number of folds must be at least 2!");
+        }
+        if (numFolds > data.numInstances()) {
+            throw new IllegalArgumentException("Can't have more folds than instances!");
+        }
+
+        Instances shuffled = new Instances(data);
+        shuffled.randomize(random);
+        if (shuffled.classAttribute().isNominal()) {
+            shuffled.stratify(numFolds);
+        }
+
+        // the training rows are shuffled with the same random numbers as Instances.trainCV
+        int[][] trainRows = new int[numFolds][];
+        Classifier[] classifiers = new Classifier[numFolds];
+
+        for (int fold = 0; fold < numFolds; ++fold) {
+            trainRows[fold] = trainRows(shuffled.numInstances(), numFolds, fold, random);
+            classifiers[fold] = Classifier.makeCopy(classifier);
+        }
+
+        double[][][] predictions = new double[numFolds][][];
+        Exception[] failures = new Exception[numFolds];
+        ForkJoinPool pool = myForkJoin.createPool(Math.min(threadsFor(numThreads), numFolds));
+
+        try {
+            myForkJoin.forEach(pool, numFolds, fold -> {
+                try {
+                    Instances train = new FoldView(shuffled, trainRows[fold]);
+                    Classifier trained = classifiers[fold];
+
+                    if (cache == null) {
+                        trained.buildClassifier(train);
+                    } else {
+                        trained = cache.buildClassifier(trained, train);
+                    }
+                    predictions[fold] = predict(trained, shuffled, numFolds, fold);
+                } catch (Exception e) {
+                    failures[fold] = e;
+                }
+
+                classifiers[fold] = null;
+            });
+        } finally {
+            myForkJoin.shutdown(pool);
+        }
+
+        for (Exception failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        for (int fold = 0; fold < numFolds; ++fold) {
+            evaluation.setPriors(new FoldView(shuffled, trainRows[fold]));
+
+            int first = firstTestRow(shuffled.numInstances(), numFolds, fold);
+            for (int i = 0; i < predictions[fold].length; ++i) {
+                evaluation.evaluateModelOnceAndRecordPrediction(predictions[fold][i], shuffled.instance(first + i));
+            }
+        }
+    }
+
+    private static int threadsFor(int numThreads) {
+        return numThreads <= 0 ? Runtime.getRuntime().availableProcessors() : numThreads;
+    }
+
+    /**
+     * return the predictions for the test rows of a fold, a class
+     * distribution for a nominal class and the predicted value otherwise.
+     * The class is hidden from the classifier as Evaluation does
+     */
+    private static double[][] predict(Classifier classifier, Instances data, int numFolds, int fold) throws Exception {
+        int first = firstTestRow(data.numInstances(), numFolds, fold);
+        double[][] result = new double[testSize(data.numInstances(), numFolds, fold)][];
+
+        for (int i = 0; i < result.length; ++i) {
+            Instance classMissing = (Instance)data.instance(first + i).copy();
+            classMissing.setDataset(data);
+            classMissing.setClassMissing();
+
+            if (data.classAttribute().isNominal()) {
+                result[i] = classifier.distributionForInstance(classMissing);
+            } else {
+                result[i] = new double[] {classifier.classifyInstance(classMissing)};
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * return the number of test rows of a fold, see Instances.testCV
+     */
+    private static int testSize(int numRows, int numFolds, int fold) {
+        return numRows / numFolds + (fold < numRows % numFolds ? 1 : 0);
+    }
+
+    /**
+     * return the first test row of a fold, see Instances.testCV
+     */
+    private static int firstTestRow(int numRows, int numFolds, int fold) {
+        int offset = fold < numRows % numFolds ? fold : numRows % numFolds;
+
+        return fold * (numRows / numFolds) + offset;
+    }
+
+    /**
+     * return the training rows of a fold in the order of
+     * Instances.trainCV(numFolds, fold, random)
+     */
+    private static int[] trainRows(int numRows, int numFolds, int fold, Random random) {
+        int first = firstTestRow(numRows, numFolds, fold);
+        int last = first + testSize(numRows, numFolds, fold);
+        int[] rows = new int[numRows - (last - first)];
+        int numTrain = 0;
+
+        for (int i = 0; i < numRows; ++i) {
+            if (i < first || i >= last) {
+                rows[numTrain++] = i;
+            }
+        }
+
+        // Instances.randomize
+        for (int j = rows.length - 1; j > 0; --j) {
+            int k = random.nextInt(j + 1);
+            int swap = rows[j];
+            rows[j] = rows[k];
+            rows[k] = swap;
+        }
+
+        return rows;
+    }
+
+    /**
+     * Instances holding some rows of another dataset, the Instance objects
+     * themselves are shared
+     */
+    private static class FoldView extends Instances {
+
+        FoldView(Instances data, int[] rows) {
+            super(data, rows.length);
+
+            for (int row : rows) {
+                m_Instances.addElement(data.instance(row));
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+import weka.core.Utils;
+
+/**
+ * Entropy kernels over arrays of class weights, shared by myID3,
+ * myHoeffdingID3 and myModel. Everything is written in terms of
+ * n * log2(n) of the weights instead of p * log2(p) of the ratios, so a
+ * split costs one division in total instead of one per weight, and for
+ * whole weights below TABLE_SIZE, the usual case when every instance
+ * weighs 1, n * log2(n) is read from a table instead of computed. The
+ * table holds exactly what n * Utils.log2(n) returns, so both paths give
+ * the same bits.
+ */
+public class myEntropy {
+
+    static final int TABLE_SIZE = 4096;
+
+    private static final double[] N_LOG_N = new double[TABLE_SIZE];
+
+    static {
+        for (int n = 1; n < TABLE_SIZE; ++n) {
+            N_LOG_N[n] = n * Utils.log2(n);
+        }
+    }
+
+    private myEntropy() {
+
+    }
+
+    /**
+     * return n * log2(n), 0 for n of 0 or less
+     */
+    public static double nLogN(double n) {
+        if (n <= 0) {
+            return 0;
+        }
+
+        if (n < TABLE_SIZE) {
+            int whole = (int) n;
+
+            if (whole == n) {
+                return N_LOG_N[whole];
+            }
+        }
+
+        return n * Utils.log2(n);
+    }
+
+    /**
+     * return the sum of n * log2(n) over values[from, from + length)
+     */
+    public static double sumNLogN(double[] values, int from, int length) {
+        double sum = 0;
+
+        for (int i = from; i < from + length; ++i) {
+            sum += nLogN(values[i]);
+        }
+
+        return sum;
+    }
+
+    /**
+     * return the sum of n * log2(n) over all values
+     */
+    public static double sumNLogN(double[] values) {
+        return sumNLogN(values, 0, values.length);
+    }
+
+    /**
+     * return the entropy of the class weights counts[from, from + length)
+     * that add up to total, 0 when total is not positive
+     */
+    public static double entropy(double[] counts, int from, int length, double total) {
+        if (!(total > 0)) {
+            return 0;
+        }
+
+        return -sumNLogN(counts, from, length) / total + Utils.log2(total);
+    }
+
+    /**
+     * return the entropy of class weights that add up to total
+     */
+    public static double entropy(double[] counts, double total) {
+        return entropy(counts, 0, counts.length, total);
+    }
+
+    /**
+     * return the entropy of class weights
+     */
+    public static double entropy(double[] counts) {
+        return entropy(counts, Utils.sum(counts));
+    }
+
+    /**
+     * return the weighted entropy of a split, total * H(subset) summed over
+     * the subsets, from the class weights and the total of every subset.
+     * Divided by the total of all subsets it is the entropy left after the
+     * split, so the info gain is entropy(parent) - splitEntropy / total
+     */
+    public static double splitEntropy(double[][] counts, double[] totals) {
+        double sum = 0;
+
+        for (int i = 0; i < counts.length; ++i) {
+            sum += nLogN(totals[i]) - sumNLogN(counts[i]);
+        }
+
+        return sum;
+    }
+
+    /**
+     * return the info gain of a split whose subsets have the given class
+     * weights and totals, with the class weights of all subsets together
+     */
+    public static double infoGain(double[] classCounts, double[][] counts, double[] totals, double total) {
+        if (!(total > 0)) {
+            return 0;
+        }
+
+        return (nLogN(total) - sumNLogN(classCounts) - splitEntropy(counts, totals)) / total;
+    }
+
+    /**
+     * return the info gain of a binary split with class weights left and
+     * right, parentEntropy is the entropy of both sides together
+     */
+    public static double infoGain(double parentEntropy, double[] left, double leftTotal, double[] right, double rightTotal) {
+        double total = leftTotal + rightTotal;
+
+        if (!(total > 0)) {
+            return 0;
+        }
+
+        double splitEntropy = nLogN(leftTotal) - sumNLogN(left) + nLogN(rightTotal) - sumNLogN(right);
+
+        return parentEntropy - splitEntropy / total;
+    }
+
+    /**
+     * return the split information of subsets with the given totals
+     */
+    public static double splitInformation(double[] totals, double total) {
+        return entropy(totals, total);
+    }
+
+    /**
+     * return the split information of a binary split
+     */
+    public static double splitInformation(double leftTotal, double rightTotal) {
+        double total = leftTotal + rightTotal;
+
+        if (!(total > 0)) {
+            return 0;
+        }
+
+        return (nLogN(total) - nLogN(leftTotal) - nLogN(rightTotal)) / total;
+    }
+}
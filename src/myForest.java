@@ -0,0 +1,340 @@
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.Utils;
+
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Bagging of myC45 trees, and a random forest when every node only
+ * draws a few attributes to split on (-K). The training data is copied
+ * into columns, imputed and sorted once. Every tree trains on a
+ * bootstrap sample of it that is only a count per row, used as the row
+ * weight, so no instance is copied per tree. The trees are built at the
+ * same time, one per thread, and kept as compiled trees. A prediction is
+ * the average of the class distributions of the trees.
+ */
+public class myForest extends Classifier {
+
+    private myCompiledTree[] trees = null;
+    private Instances header = null;
+
+    private int numTrees = 10;
+    private int numRandomAttributes = 0;
+    private int seed = 1;
+    private int numThreads = 1;
+    private int numBins = 0;
+    private double confidence = 0;
+    private double errorThreshold = myNode.DEFAULT_ERROR_THRESHOLD;
+    private boolean unpruned = false;
+
+    public myForest() {
+
+    }
+
+    /**
+     * Returns an enumeration describing the available options.
+     */
+    @Override
+    public Enumeration listOptions() {
+        Vector<Option> newVector = new Vector<>();
+
+        newVector.addElement(new Option(
+                "\tNumber of trees. (default 10)",
+                "I", 1, "-I <number of trees>"));
+        newVector.addElement(new Option(
+                "\tNumber of attributes drawn at random in every node to\n" +
+                "\tchoose the split from. 0 uses every attribute. (default 0)",
+                "K", 1, "-K <number of attributes>"));
+        newVector.addElement(new Option(
+                "\tSeed of the bootstrap samples and attribute draws. (default 1)",
+                "S", 1, "-S <seed>"));
+        newVector.addElement(new Option(
+                "\tNumber of threads the trees are built on.\n" +
+                "\t0 uses every available processor. (default 1)",
+                "P", 1, "-P <number of threads>"));
+        newVector.addElement(new Option(
+                "\tBin every numeric attribute into at most this many quantile\n" +
+                "\tbins, see myC45. 0 searches the exact thresholds. (default 0)",
+                "H", 1, "-H <number of bins>"));
+        newVector.addElement(new Option(
+                "\tPrune with the pessimistic error estimate of C4.5 at this\n" +
+                "\tconfidence, see myC45. (default 0)",
+                "E", 1, "-E <confidence>"));
+        newVector.addElement(new Option(
+                "\tPrune a subtree unless it has this much less error\n" +
+                "\tthan a leaf. (default " + myNode.DEFAULT_ERROR_THRESHOLD + ")",
+                "T", 1, "-T <error threshold>"));
+        newVector.addElement(new Option(
+                "\tDo not prune the trees.",
+                "U", 0, "-U"));
+
+        Enumeration enu = super.listOptions();
+        while (enu.hasMoreElements()) {
+            newVector.addElement((Option)enu.nextElement());
+        }
+
+        return newVector.elements();
+    }
+
+    /**
+     * Parses a given list of options.
+     */
+    @Override
+    public void setOptions(String[] options) throws Exception {
+        String trees = Utils.getOption('I', options);
+        numTrees = trees.length() == 0 ? 10 : Integer.parseInt(trees);
+
+        String attributes = Utils.getOption('K', options);
+        numRandomAttributes = attributes.length() == 0 ? 0 : Integer.parseInt(attributes);
+
+        String randomSeed = Utils.getOption('S', options);
+        seed = randomSeed.length() == 0 ? 1 : Integer.parseInt(randomSeed);
+
+        String threads = Utils.getOption('P', options);
+        numThreads = threads.length() == 0 ? 1 : Integer.parseInt(threads);
+
+        String bins = Utils.getOption('H', options);
+        numBins = bins.length() == 0 ? 0 : Integer.parseInt(bins);
+
+        String pruningConfidence = Utils.getOption('E', options);
+        confidence = pruningConfidence.length() == 0 ? 0 : Double.parseDouble(pruningConfidence);
+
+        String pruningThreshold = Utils.getOption('T', options);
+        errorThreshold = pruningThreshold.length() == 0 ? myNode.DEFAULT_ERROR_THRESHOLD : Double.parseDouble(pruningThreshold);
+
+        unpruned = Utils.getFlag('U', options);
+
+        super.setOptions(options);
+    }
+
+    /**
+     * Gets the current settings of the classifier.
+     */
+    @Override
+    public String[] getOptions() {
+        Vector<String> options = new Vector<>();
+
+        options.add("-I");
+        options.add("" + numTrees);
+        options.add("-K");
+        options.add("" + numRandomAttributes);
+        options.add("-S");
+        options.add("" + seed);
+        options.add("-P");
+        options.add("" + numThreads);
+        options.add("-H");
+        options.add("" + numBins);
+        options.add("-E");
+        options.add("" + confidence);
+        options.add("-T");
+        options.add("" + errorThreshold);
+
+        if (unpruned) {
+            options.add("-U");
+        }
+
+        for (String option : super.getOptions()) {
+            options.add(option);
+        }
+
+        return options.toArray(new String[0]);
+    }
+
+    public int getNumTrees() {
+        return numTrees;
+    }
+
+    public void setNumTrees(int numTrees) {
+        this.numTrees = numTrees;
+    }
+
+    public int getNumRandomAttributes() {
+        return numRandomAttributes;
+    }
+
+    public void setNumRandomAttributes(int numRandomAttributes) {
+        this.numRandomAttributes = numRandomAttributes;
+    }
+
+    public int getSeed() {
+        return seed;
+    }
+
+    public void setSeed(int seed) {
+        this.seed = seed;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public int getNumBins() {
+        return numBins;
+    }
+
+    public void setNumBins(int numBins) {
+        this.numBins = numBins;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    public void setConfidence(double confidence) {
+        this.confidence = confidence;
+    }
+
+    public double getErrorThreshold() {
+        return errorThreshold;
+    }
+
+    public void setErrorThreshold(double errorThreshold) {
+        this.errorThreshold = errorThreshold;
+    }
+
+    public boolean getUnpruned() {
+        return unpruned;
+    }
+
+    public void setUnpruned(boolean unpruned) {
+        this.unpruned = unpruned;
+    }
+
+    @Override
+    public void buildClassifier(Instances data) {
+        myImputer imputer = myImputer.build(data);
+        build(myColumnStore.create(data, imputer), imputer);
+    }
+
+    /**
+     * build the trees straight from a column store, for example one read
+     * by myArffLoader. The missing values of the store are replaced in place
+     */
+    public void buildClassifier(myColumnStore store) {
+        myImputer imputer = myImputer.build(store);
+        store.imputeMissing(imputer);
+        build(store, imputer);
+    }
+
+    /**
+     * grow every tree on a bootstrap sample of one sorted view of the store
+     */
+    private void build(myColumnStore store, myImputer imputer) {
+        header = store.getHeader();
+        trees = new myCompiledTree[numTrees];
+
+        mySubset data = numBins > 0 ? mySubset.binned(store, numBins) : mySubset.presort(store);
+
+        // the seeds are drawn up front, so the trees do not depend on the number of threads
+        Random random = new Random(seed);
+        long[] seeds = new long[numTrees];
+
+        for (int t = 0; t < numTrees; ++t) {
+            seeds[t] = random.nextLong();
+        }
+
+        ForkJoinPool pool = myForkJoin.createPool(numThreads);
+
+        try {
+            myForkJoin.forEach(pool, numTrees, t -> trees[t] = buildTree(data, imputer, seeds[t]));
+        } finally {
+            myForkJoin.shutdown(pool);
+        }
+    }
+
+    /**
+     * grow, prune and compile one tree on a bootstrap sample of data.
+     * The tree is built on the calling thread, the forest is parallel
+     * over its trees
+     */
+    private myCompiledTree buildTree(mySubset data, myImputer imputer, long treeSeed) {
+        long start = myMetrics.start();
+        Random random = new Random(treeSeed);
+        int numRows = data.numRows();
+        int[] counts = new int[numRows];
+
+        for (int i = 0; i < numRows; ++i) {
+            ++counts[random.nextInt(numRows)];
+        }
+
+        myNode root = new myNode();
+        root.buildClassifier(data.sample(counts),
+                new myBuildContext(null, myBuildContext.DEFAULT_FORK_THRESHOLD, numRandomAttributes, random));
+
+        if (!unpruned) {
+            root.prune(confidence, errorThreshold);
+        }
+
+        myCompiledTree.Builder builder = new myCompiledTree.Builder(header.numClasses());
+        root.compileInto(builder, 0, header);
+        myCompiledTree tree = builder.build(imputer.getValues());
+        myMetrics.recordTraining(start);
+
+        return tree;
+    }
+
+    @Override
+    public double[] distributionForInstance(Instance instance) {
+        double[] result = new double[instance.numClasses()];
+        distributionForInstance(instance, result);
+
+        return result;
+    }
+
+    /**
+     * write the average class distribution of the trees into result
+     */
+    public void distributionForInstance(Instance instance, double[] result) {
+        if (trees == null) {
+            throw new IllegalStateException("Classifier has not build yet");
+        }
+
+        long start = myMetrics.start();
+        double[] distribution = new double[result.length];
+        Arrays.fill(result, 0);
+
+        for (myCompiledTree tree : trees) {
+            tree.distributionForInstance(instance, distribution);
+
+            for (int j = 0; j < result.length; ++j) {
+                result[j] += distribution[j];
+            }
+        }
+
+        for (int j = 0; j < result.length; ++j) {
+            result[j] /= trees.length;
+        }
+
+        myMetrics.recordPrediction(start);
+    }
+
+    @Override
+    public String toString() {
+        if (trees == null) {
+            return "myForest: No model built yet.";
+        }
+
+        long numLeaves = 0;
+        long numNodes = 0;
+
+        for (myCompiledTree tree : trees) {
+            numLeaves += tree.numLeaves();
+            numNodes += tree.numNodes();
+        }
+
+        return "myForest of " + trees.length + " trees\n--------------------\n"
+                + (numRandomAttributes > 0 ? "\nAttributes drawn per node : \t" + numRandomAttributes + "\n" : "")
+                + "\nAverage number of leaves : \t" + Utils.doubleToString((double) numLeaves / Math.max(1, trees.length), 2)
+                + "\n\nAverage size of a tree   : \t" + Utils.doubleToString((double) numNodes / Math.max(1, trees.length), 2) + "\n";
+    }
+}
@@ -0,0 +1,100 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
+
+/**
+ * Helpers to run the independent parts of a tree build on a
+ * ForkJoinPool. A null pool always means the work is done
+ * sequentially on the calling thread.
+ */
+public class myForkJoin {
+
+    private static final Map<Integer, ForkJoinPool> BATCH_POOLS = new ConcurrentHashMap<>();
+
+    private myForkJoin() {
+
+    }
+
+    /**
+     * create a pool for the given number of threads, 0 or less uses
+     * every available processor and 1 returns null (sequential)
+     */
+    public static ForkJoinPool createPool(int numThreads) {
+        if (numThreads <= 0) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+
+        return numThreads == 1 ? null : new ForkJoinPool(numThreads);
+    }
+
+    /**
+     * return the pool for batch work on the given number of threads (see
+     * createPool), shared by every call with the same number of threads.
+     * It is never shut down, its threads end by themselves when idle
+     */
+    public static ForkJoinPool batchPool(int numThreads) {
+        if (numThreads <= 0) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+
+        return numThreads == 1 ? null : BATCH_POOLS.computeIfAbsent(numThreads, ForkJoinPool::new);
+    }
+
+    /**
+     * shut the pool down, if there is one
+     */
+    public static void shutdown(ForkJoinPool pool) {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * run body for every index in [0, n), in parallel when a pool is given,
+     * and return once all of them are done
+     */
+    public static void forEach(ForkJoinPool pool, int n, IntConsumer body) {
+        if (pool == null || n <= 1) {
+            for (int i = 0; i < n; ++i) {
+                body.accept(i);
+            }
+            return;
+        }
+
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[n];
+
+        for (int i = 0; i < n; ++i) {
+            final int index = i;
+            tasks[i] = pool.submit(() -> body.accept(index));
+        }
+
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    /**
+     * Work on a block of consecutive rows.
+     */
+    public interface BlockBody {
+        void run(int from, int to);
+    }
+
+    /**
+     * cut [0, n) into blocks of blockSize rows and run body on every block,
+     * spread over the batch pool of numThreads threads when there is more
+     * than one block (see createPool for the meaning of numThreads)
+     */
+    public static void forEachBlock(int numThreads, int n, int blockSize, BlockBody body) {
+        int numBlocks = (n + blockSize - 1) / blockSize;
+
+        if (numBlocks <= 1) {
+            body.run(0, n);
+            return;
+        }
+
+        forEach(batchPool(numThreads), numBlocks, block -> body.run(block * blockSize, Math.min(n, (block + 1) * blockSize)));
+    }
+}
@@ -0,0 +1,371 @@
+import weka.classifiers.Classifier;
+import weka.classifiers.UpdateableClassifier;
+import weka.core.*;
+
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Vector;
+
+/**
+ * ID3 yang dilatih satu instance demi satu instance (Hoeffding tree / VFDT).
+ * Setiap daun menyimpan jumlah bobot per attribut x nilai x kelas, dan daun baru
+ * dipecah bila Hoeffding bound sudah memastikan attribut dengan information gain
+ * terbesar. Data training tidak pernah disimpan, sehingga bisa dibaca langsung dari
+ * ArffLoader.getNextInstance: buildClassifier dengan header kosong, lalu
+ * updateClassifier untuk setiap instance.
+ */
+public class myHoeffdingID3 extends Classifier implements UpdateableClassifier {
+    private static final int DEFAULT_GRACE_PERIOD = 200;
+    private static final double DEFAULT_SPLIT_CONFIDENCE = 1.0E-7D;
+    private static final double DEFAULT_TIE_THRESHOLD = 0.05D;
+
+    private myHoeffdingID3[] m_Successors;
+    private Attribute m_Attribute;
+
+    // Header data training tanpa instance, sama untuk semua node
+    private Instances m_Header;
+
+    // Distribusi kelas semua instance yang sampai di node ini
+    private double[] m_ClassCounts;
+
+    // Hanya di daun: [attribut][nilai][kelas], null untuk attribut yang sudah dipakai
+    private double[][][] m_Counts;
+    private double m_WeightAtLastCheck;
+
+    private int m_GracePeriod = DEFAULT_GRACE_PERIOD;
+    private double m_SplitConfidence = DEFAULT_SPLIT_CONFIDENCE;
+    private double m_TieThreshold = DEFAULT_TIE_THRESHOLD;
+
+    public myHoeffdingID3(){
+
+    }
+
+    public Enumeration listOptions() {
+        Vector<Option> newVector = new Vector<>();
+        newVector.addElement(new Option("\tWeight a leaf has to see between two split attempts.\n\t(default " + DEFAULT_GRACE_PERIOD + ")", "G", 1, "-G <weight>"));
+        newVector.addElement(new Option("\tAllowed chance that the chosen split attribute is not the best one.\n\t(default " + DEFAULT_SPLIT_CONFIDENCE + ")", "S", 1, "-S <confidence>"));
+        newVector.addElement(new Option("\tHoeffding bound under which a tie between attributes is broken.\n\t(default " + DEFAULT_TIE_THRESHOLD + ")", "T", 1, "-T <threshold>"));
+
+        Enumeration enu = super.listOptions();
+        while(enu.hasMoreElements()) {
+            newVector.addElement((Option)enu.nextElement());
+        }
+
+        return newVector.elements();
+    }
+
+    public void setOptions(String[] options) throws Exception {
+        String gracePeriod = Utils.getOption('G', options);
+        this.m_GracePeriod = gracePeriod.length() == 0 ? DEFAULT_GRACE_PERIOD : Integer.parseInt(gracePeriod);
+        String splitConfidence = Utils.getOption('S', options);
+        this.m_SplitConfidence = splitConfidence.length() == 0 ? DEFAULT_SPLIT_CONFIDENCE : Double.parseDouble(splitConfidence);
+        String tieThreshold = Utils.getOption('T', options);
+        this.m_TieThreshold = tieThreshold.length() == 0 ? DEFAULT_TIE_THRESHOLD : Double.parseDouble(tieThreshold);
+        super.setOptions(options);
+    }
+
+    public String[] getOptions() {
+        Vector<String> options = new Vector<>();
+        options.add("-G");
+        options.add("" + this.m_GracePeriod);
+        options.add("-S");
+        options.add("" + this.m_SplitConfidence);
+        options.add("-T");
+        options.add("" + this.m_TieThreshold);
+        options.addAll(Arrays.asList(super.getOptions()));
+        return options.toArray(new String[0]);
+    }
+
+    public int getGracePeriod() {
+        return this.m_GracePeriod;
+    }
+
+    public void setGracePeriod(int gracePeriod) {
+        this.m_GracePeriod = gracePeriod;
+    }
+
+    public double getSplitConfidence() {
+        return this.m_SplitConfidence;
+    }
+
+    public void setSplitConfidence(double splitConfidence) {
+        this.m_SplitConfidence = splitConfidence;
+    }
+
+    public double getTieThreshold() {
+        return this.m_TieThreshold;
+    }
+
+    public void setTieThreshold(double tieThreshold) {
+        this.m_TieThreshold = tieThreshold;
+    }
+
+    public Capabilities getCapabilities() {
+        Capabilities result = super.getCapabilities();
+        result.disableAll();
+        result.enable(Capabilities.Capability.NOMINAL_ATTRIBUTES);
+        result.enable(Capabilities.Capability.MISSING_VALUES);
+        result.enable(Capabilities.Capability.NOMINAL_CLASS);
+        result.enable(Capabilities.Capability.MISSING_CLASS_VALUES);
+        result.setMinimumNumberInstances(0);
+        return result;
+    }
+
+    /**
+     * Memulai tree baru dari header data lalu memasukkan setiap instance nya,
+     * data boleh kosong bila instance nya datang belakangan lewat updateClassifier
+     */
+    public void buildClassifier(Instances data) throws Exception {
+        this.getCapabilities().testWithFail(data);
+        this.m_Header = new Instances(data, 0);
+
+        boolean[] usedAttributes = new boolean[data.numAttributes()];
+        usedAttributes[data.classIndex()] = true;
+        this.makeLeaf(usedAttributes, new double[data.numClasses()]);
+
+        for(int i = 0; i < data.numInstances(); ++i) {
+            this.updateClassifier(data.instance(i));
+        }
+    }
+
+    /**
+     * Menjadikan node ini daun dengan distribusi kelas awal, counter disiapkan untuk attribut yang belum dipakai
+     */
+    private void makeLeaf(boolean[] usedAttributes, double[] classCounts) {
+        this.m_Attribute = null;
+        this.m_Successors = null;
+        this.m_ClassCounts = classCounts;
+        this.m_Counts = new double[this.m_Header.numAttributes()][][];
+        this.m_WeightAtLastCheck = Utils.sum(classCounts);
+
+        for(int j = 0; j < this.m_Header.numAttributes(); ++j) {
+            if (!usedAttributes[j]) {
+                this.m_Counts[j] = new double[this.m_Header.attribute(j).numValues()][this.m_Header.numClasses()];
+            }
+        }
+    }
+
+    /**
+     * Menambahkan satu instance ke tree, instance tidak disimpan
+     */
+    public void updateClassifier(Instance instance) throws Exception {
+        if (this.m_ClassCounts == null) {
+            throw new Exception("myHoeffdingID3: buildClassifier has to be called first.");
+        } else if (instance.isMissing(this.m_Header.classIndex())) {
+            return;
+        }
+
+        int classValue = (int)instance.value(this.m_Header.classIndex());
+        double weight = instance.weight();
+        myHoeffdingID3 node = this;
+
+        // Turun sampai daun, instance dengan nilai kosong pada attribut pemecah berhenti di node itu
+        while(true) {
+            node.m_ClassCounts[classValue] += weight;
+
+            if (node.m_Attribute == null) {
+                node.learn(instance, classValue, weight);
+                return;
+            } else if (instance.isMissing(node.m_Attribute)) {
+                return;
+            }
+
+            node = node.m_Successors[(int)instance.value(node.m_Attribute)];
+        }
+    }
+
+    private void learn(Instance instance, int classValue, double weight) {
+        for(int j = 0; j < this.m_Counts.length; ++j) {
+            if (this.m_Counts[j] != null && !instance.isMissing(j)) {
+                this.m_Counts[j][(int)instance.value(j)][classValue] += weight;
+            }
+        }
+
+        double seen = Utils.sum(this.m_ClassCounts);
+
+        if (seen - this.m_WeightAtLastCheck >= this.m_GracePeriod) {
+            this.m_WeightAtLastCheck = seen;
+            this.attemptSplit(seen);
+        }
+    }
+
+    /**
+     * Memecah daun bila selisih information gain attribut terbaik dan kedua terbaik
+     * melebihi Hoeffding bound, atau bound nya sudah di bawah tie threshold
+     */
+    private void attemptSplit(double seen) {
+        double entropy = computeEntropy(this.m_ClassCounts);
+
+        if (Utils.eq(entropy, 0.0D)) {
+            return;
+        }
+
+        int bestAttribute = -1;
+        double bestInfoGain = 0.0D;
+        double secondInfoGain = 0.0D;
+
+        for(int j = 0; j < this.m_Counts.length; ++j) {
+            if (this.m_Counts[j] == null) {
+                continue;
+            }
+
+            double infoGain = this.computeInfoGain(this.m_Counts[j]);
+
+            if (bestAttribute == -1 || infoGain > bestInfoGain) {
+                secondInfoGain = bestAttribute == -1 ? 0.0D : bestInfoGain;
+                bestInfoGain = infoGain;
+                bestAttribute = j;
+            } else if (infoGain > secondInfoGain) {
+                secondInfoGain = infoGain;
+            }
+        }
+
+        if (bestAttribute == -1 || !Utils.gr(bestInfoGain, 0.0D)) {
+            return;
+        }
+
+        double range = Utils.log2(this.m_Header.numClasses());
+        double bound = Math.sqrt(range * range * Math.log(1.0D / this.m_SplitConfidence) / (2.0D * seen));
+
+        if (bestInfoGain - secondInfoGain > bound || bound < this.m_TieThreshold) {
+            this.split(bestAttribute);
+        }
+    }
+
+    /**
+     * Daun menjadi node dengan satu daun baru per nilai attribut, daun baru
+     * mulai dari distribusi kelas nilai tersebut
+     */
+    private void split(int attributeIndex) {
+        boolean[] usedAttributes = new boolean[this.m_Counts.length];
+
+        for(int j = 0; j < usedAttributes.length; ++j) {
+            usedAttributes[j] = this.m_Counts[j] == null || j == attributeIndex;
+        }
+
+        double[][] valueCounts = this.m_Counts[attributeIndex];
+        this.m_Attribute = this.m_Header.attribute(attributeIndex);
+        this.m_Successors = new myHoeffdingID3[valueCounts.length];
+        this.m_Counts = null;
+
+        for(int v = 0; v < valueCounts.length; ++v) {
+            myHoeffdingID3 successor = new myHoeffdingID3();
+            successor.m_Header = this.m_Header;
+            successor.m_GracePeriod = this.m_GracePeriod;
+            successor.m_SplitConfidence = this.m_SplitConfidence;
+            successor.m_TieThreshold = this.m_TieThreshold;
+            successor.makeLeaf(usedAttributes, valueCounts[v].clone());
+            this.m_Successors[v] = successor;
+        }
+    }
+
+    private double computeInfoGain(double[][] valueCounts) {
+        double infoGain = computeEntropy(this.m_ClassCounts);
+        double total = 0.0D;
+
+        for(double[] counts : valueCounts) {
+            total += Utils.sum(counts);
+        }
+
+        for(double[] counts : valueCounts) {
+            double valueTotal = Utils.sum(counts);
+
+            if (valueTotal > 0.0D) {
+                infoGain -= valueTotal / total * computeEntropy(counts);
+            }
+        }
+
+        return infoGain;
+    }
+
+    private static double computeEntropy(double[] classCounts) {
+        return myEntropy.entropy(classCounts);
+    }
+
+    public double classifyInstance(Instance instance) {
+        double[] distribution = this.distributionForInstance(instance);
+        return Utils.eq(Utils.sum(distribution), 0.0D) ? Instance.missingValue() : (double)Utils.maxIndex(distribution);
+    }
+
+    /**
+     * Distribusi kelas daun yang dicapai, atau node terakhir yang pernah melihat
+     * instance bila daun nya masih kosong atau nilai attribut pemecahnya kosong
+     */
+    public double[] distributionForInstance(Instance instance) {
+        myHoeffdingID3 node = this;
+        double[] counts = this.m_ClassCounts;
+
+        while(true) {
+            if (Utils.gr(Utils.sum(node.m_ClassCounts), 0.0D)) {
+                counts = node.m_ClassCounts;
+            }
+
+            if (node.m_Attribute == null || instance.isMissing(node.m_Attribute)) {
+                break;
+            }
+
+            node = node.m_Successors[(int)instance.value(node.m_Attribute)];
+        }
+
+        double[] result = counts.clone();
+
+        if (Utils.gr(Utils.sum(result), 0.0D)) {
+            Utils.normalize(result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Banyaknya daun dalam tree
+     */
+    public int numLeaves() {
+        if (this.m_Attribute == null) {
+            return 1;
+        }
+
+        int numLeaves = 0;
+
+        for(myHoeffdingID3 successor : this.m_Successors) {
+            numLeaves += successor.numLeaves();
+        }
+
+        return numLeaves;
+    }
+
+    public String toString() {
+        if (this.m_ClassCounts == null) {
+            return "myHoeffdingID3: No model built yet.";
+        }
+
+        return "myHoeffdingID3\n\n" + this.toString(0) + "\n\nNumber of leaves: " + this.numLeaves();
+    }
+
+    private String toString(int level) {
+        StringBuffer text = new StringBuffer();
+        if (this.m_Attribute == null) {
+            if (Utils.eq(Utils.sum(this.m_ClassCounts), 0.0D)) {
+                text.append(": null");
+            } else {
+                text.append(": " + this.m_Header.classAttribute().value(Utils.maxIndex(this.m_ClassCounts)));
+            }
+        } else {
+            for(int j = 0; j < this.m_Attribute.numValues(); ++j) {
+                text.append("\n");
+
+                for(int i = 0; i < level; ++i) {
+                    text.append("|  ");
+                }
+
+                text.append(this.m_Attribute.name() + " = " + this.m_Attribute.value(j));
+                text.append(this.m_Successors[j].toString(level + 1));
+            }
+        }
+
+        return text.toString();
+    }
+
+    public static void main(String[] args) {
+        runClassifier(new myHoeffdingID3(), args);
+    }
+}
@@ -1,21 +1,95 @@
 import weka.classifiers.Classifier;
 import weka.core.*;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.Remove;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class myID3 extends Classifier {
+    private static final int BATCH_BLOCK_SIZE = 1024;
+
     private myID3[] m_Successors;
     private Attribute m_Attribute;
     private double m_ClassValue;
     private double[] m_Distribution;
     private Attribute m_ClassAttribute;
+    private int m_ClassIndex;
+    private Instances m_Header;
+
+    private int m_NumThreads = 1;
+    private int m_ForkThreshold = myBuildContext.DEFAULT_FORK_THRESHOLD;
+    private boolean m_UseCompiledTree = false;
+    private myCompiledTree m_CompiledTree;
+    private transient myCompiledTree m_BatchCompiledTree;
 
     public myID3(){
 
     }
 
+    public Enumeration listOptions() {
+        Vector<Option> newVector = new Vector<>();
+        newVector.addElement(new Option("\tNumber of threads used to compute the information gains.\n\t0 uses every available processor. (default 1)", "P", 1, "-P <number of threads>"));
+        newVector.addElement(new Option("\tSmallest number of rows for which a successor is built as its own task.\n\t(default " + myBuildContext.DEFAULT_FORK_THRESHOLD + ")", "F", 1, "-F <number of rows>"));
+        newVector.addElement(new Option("\tCompile the tree into flat arrays after the build and predict with the compiled tree.", "C", 0, "-C"));
+
+        Enumeration enu = super.listOptions();
+        while(enu.hasMoreElements()) {
+            newVector.addElement((Option)enu.nextElement());
+        }
+
+        return newVector.elements();
+    }
+
+    public void setOptions(String[] options) throws Exception {
+        String threads = Utils.getOption('P', options);
+        this.m_NumThreads = threads.length() == 0 ? 1 : Integer.parseInt(threads);
+        String threshold = Utils.getOption('F', options);
+        this.m_ForkThreshold = threshold.length() == 0 ? myBuildContext.DEFAULT_FORK_THRESHOLD : Integer.parseInt(threshold);
+        this.m_UseCompiledTree = Utils.getFlag('C', options);
+        super.setOptions(options);
+    }
+
+    public String[] getOptions() {
+        Vector<String> options = new Vector<>();
+        options.add("-P");
+        options.add("" + this.m_NumThreads);
+        options.add("-F");
+        options.add("" + this.m_ForkThreshold);
+        if (this.m_UseCompiledTree) {
+            options.add("-C");
+        }
+        options.addAll(Arrays.asList(super.getOptions()));
+        return options.toArray(new String[0]);
+    }
+
+    public int getNumThreads() {
+        return this.m_NumThreads;
+    }
+
+    public void setNumThreads(int numThreads) {
+        this.m_NumThreads = numThreads;
+    }
+
+    public int getForkThreshold() {
+        return this.m_ForkThreshold;
+    }
+
+    public void setForkThreshold(int forkThreshold) {
+        this.m_ForkThreshold = forkThreshold;
+    }
+
+    public boolean getUseCompiledTree() {
+        return this.m_UseCompiledTree;
+    }
+
+    public void setUseCompiledTree(boolean useCompiledTree) {
+        this.m_UseCompiledTree = useCompiledTree;
+    }
+
     public Capabilities getCapabilities() {
         Capabilities result = super.getCapabilities();
         result.disableAll();
@@ -28,66 +102,145 @@ public class myID3 extends Classifier {
 
     public void buildClassifier(Instances data) throws Exception {
         this.getCapabilities().testWithFail(data);
-        data = new Instances(data);
-        data.deleteWithMissingClass();
-        this.makeTree(data);
+        this.buildClassifier(myColumnStore.create(data));
+    }
+
+    /**
+     * Membangun tree langsung dari column store, misalnya hasil myArffLoader, tanpa Instances
+     */
+    public void buildClassifier(myColumnStore store) throws Exception {
+        this.getCapabilities().testWithFail(store.getHeader());
+        checkForMissingValues(store);
+        long start = myMetrics.start();
+        this.m_Header = store.getHeader();
+        this.m_ClassIndex = store.classIndex();
+
+        // Instance dengan kelas kosong tidak diikutkan
+        int[] rows = new int[store.numRows()];
+        int numRows = 0;
+
+        for(int i = 0; i < store.numRows(); ++i) {
+            if (store.classCode(i) != myColumnStore.MISSING_CODE) {
+                rows[numRows++] = i;
+            }
+        }
+
+        long[] usedAttributes = new long[(store.numAttributes() + 63) / 64];
+        markUsed(usedAttributes, store.classIndex());
+
+        ForkJoinPool pool = myForkJoin.createPool(this.m_NumThreads);
+        myBuildContext context = new myBuildContext(pool, this.m_ForkThreshold);
+        final int to = numRows;
+        try {
+            context.invoke(() -> this.makeTree(store, rows, 0, to, usedAttributes, context, 0));
+        } finally {
+            myForkJoin.shutdown(pool);
+        }
+
+        this.m_CompiledTree = this.m_UseCompiledTree ? this.compile() : null;
+        this.m_BatchCompiledTree = null;
+        myMetrics.recordTraining(start);
     }
 
-    private void makeTree(Instances data) throws Exception {
-        if (data.numInstances() == 0) {
+    /**
+     * Membangun node pada kedalaman depth (root = 0) dari rows[from, to)
+     */
+    private void makeTree(myColumnStore store, int[] rows, int from, int to, long[] usedAttributes, myBuildContext context, int depth) {
+        if (from == to) {
+            myMetrics.recordNode(depth, true);
             this.m_Attribute = null;
             this.m_ClassValue = Instance.missingValue();
-            this.m_Distribution = new double[data.numClasses()];
+            this.m_Distribution = new double[store.numClasses()];
         } else {
 
-            double entropyValue = computeEntropy(data);
+            double entropyValue = computeEntropy(store, rows, from, to);
             // Mengecek apakah semua berada dalam satu kelas
             if(Utils.eq(entropyValue,0.0D)) {
+                myMetrics.recordNode(depth, true);
                 this.m_Attribute = null;
-                this.m_Distribution = new double[data.numClasses()];
+                this.m_Distribution = new double[store.numClasses()];
 
-                Instance inst = data.firstInstance();
-                this.m_Distribution[(int)inst.classValue()]++;
+                this.m_Distribution[store.classCode(rows[from])]++;
 
                 this.m_ClassValue = (double)Utils.maxIndex(this.m_Distribution);
-                this.m_ClassAttribute = data.classAttribute();
+                this.m_ClassAttribute = store.getHeader().classAttribute();
 
                 // Mengecek apakah atrribut nya tinggal kelas saja
-            } else if(data.numAttributes() == 1) {
+            } else if(allUsed(usedAttributes, store.numAttributes())) {
+                myMetrics.recordNode(depth, true);
                 this.m_Attribute = null;
-                this.m_Distribution = new double[data.numClasses()];
+                this.m_Distribution = new double[store.numClasses()];
 
-                Instance inst;
-                for(Enumeration instEnum = data.enumerateInstances(); instEnum.hasMoreElements(); ++this.m_Distribution[(int)inst.classValue()]) {
-                    inst = (Instance)instEnum.nextElement();
+                for(int i = from; i < to; ++i) {
+                    this.m_Distribution[store.classCode(rows[i])] += store.weight(rows[i]);
                 }
 
                 Utils.normalize(this.m_Distribution);
                 this.m_ClassValue = (double)Utils.maxIndex(this.m_Distribution);
-                this.m_ClassAttribute = data.classAttribute();
+                this.m_ClassAttribute = store.getHeader().classAttribute();
             } else {
-                double[] infoGains = new double[data.numAttributes()];
-
-                Attribute att;
+                myMetrics.recordNode(depth, false);
+                long start = myMetrics.start();
+                double[] infoGains = new double[store.numAttributes()];
+
+                if (store.isSparse()) {
+                    this.computeSparseInfoGains(store, rows, from, to, usedAttributes, infoGains);
+                } else {
+                    // Menghitung jumlah per nilai dan kelas semua attribut yang belum dipakai sekaligus, paralel bila ada pool
+                    myContingencyTable table = myContingencyTable.count(store, rows, from, to, null,
+                            j -> !isUsed(usedAttributes, j), context.getPool());
+                    double entropy = this.computeEntropy(table.classCounts(), table.total());
+
+                    for(int j = 0; j < store.numAttributes(); ++j) {
+                        if (!isUsed(usedAttributes, j)) {
+                            infoGains[j] = this.computeInfoGain(table, entropy, j);
+                        }
+                    }
+                }
 
-                // Menghitung information gain tiap attribut
-                for(Enumeration attEnum = data.enumerateAttributes(); attEnum.hasMoreElements(); infoGains[att.index()] = this.computeInfoGain(data, att)) {
-                    att = (Attribute)attEnum.nextElement();
+                int bestAttribute = -1;
+                for(int j = 0; j < store.numAttributes(); ++j) {
+                    if (!isUsed(usedAttributes, j) && (bestAttribute == -1 || infoGains[j] > infoGains[bestAttribute])) {
+                        bestAttribute = j;
+                    }
                 }
 
-                this.m_Attribute = data.attribute(Utils.maxIndex(infoGains));
-                Instances[] splitData = this.splitData(data, this.m_Attribute);
+                myMetrics.recordScoring(start);
+
+                this.m_Attribute = store.attribute(bestAttribute);
+                start = myMetrics.start();
+                int[] bounds = this.splitData(store, rows, from, to, bestAttribute);
+                myMetrics.recordPartitioning(start);
                 this.m_Successors = new myID3[this.m_Attribute.numValues()];
-                Remove rm = new Remove();
-                Integer indexAttribute = Utils.maxIndex(infoGains) + 1;
-                rm.setAttributeIndices(indexAttribute.toString());  // remove 1st attribute
+
+                // Menandai attribut yang memiliki information gain yang paling besar, agar tidak dihitung di iterasi selanjutnya
+                long[] childUsedAttributes = usedAttributes.clone();
+                markUsed(childUsedAttributes, bestAttribute);
+
+                // Successor yang besar dibangun sebagai task tersendiri, rentang rows nya tidak beririsan
+                List<RecursiveAction> forked = new ArrayList<>();
 
                 for(int j = 0; j < this.m_Attribute.numValues(); ++j) {
-                    rm.setInputFormat(splitData[j]);
-                    // Menghapus attribut yang memiliki information gain yang paling besar, agar tidak dihitung di iterasi selanjutnya
-                    Instances instances = Filter.useFilter(splitData[j],rm);
-                    this.m_Successors[j] = new myID3();
-                    this.m_Successors[j].makeTree(instances);
+                    myID3 successor = new myID3();
+                    int successorFrom = bounds[j];
+                    int successorTo = bounds[j + 1];
+                    this.m_Successors[j] = successor;
+
+                    if (context.shouldFork(successorTo - successorFrom)) {
+                        RecursiveAction task = new RecursiveAction() {
+                            protected void compute() {
+                                successor.makeTree(store, rows, successorFrom, successorTo, childUsedAttributes, context, depth + 1);
+                            }
+                        };
+                        task.fork();
+                        forked.add(task);
+                    } else {
+                        successor.makeTree(store, rows, successorFrom, successorTo, childUsedAttributes, context, depth + 1);
+                    }
+                }
+
+                for(RecursiveAction task : forked) {
+                    task.join();
                 }
             }
 
@@ -95,73 +248,379 @@ public class myID3 extends Classifier {
 
     }
 
-    private Instances[] splitData(Instances data, Attribute att) {
-        Instances[] splitData = new Instances[att.numValues()];
+    private static void markUsed(long[] usedAttributes, int attributeIndex) {
+        usedAttributes[attributeIndex >> 6] |= 1L << attributeIndex;
+    }
 
-        for(int j = 0; j < att.numValues(); ++j) {
-            splitData[j] = new Instances(data, data.numInstances());
+    private static boolean isUsed(long[] usedAttributes, int attributeIndex) {
+        return (usedAttributes[attributeIndex >> 6] & (1L << attributeIndex)) != 0;
+    }
+
+    private static boolean allUsed(long[] usedAttributes, int numAttributes) {
+        int numUsed = 0;
+
+        for(long word : usedAttributes) {
+            numUsed += Long.bitCount(word);
         }
 
-        Enumeration instEnum = data.enumerateInstances();
+        return numUsed == numAttributes;
+    }
+
+    /**
+     * Mengurutkan ulang rows[from, to) di tempat menurut nilai attribut,
+     * mengembalikan batas awal setiap nilai (panjang numValues + 1)
+     */
+    private int[] splitData(myColumnStore store, int[] rows, int from, int to, int attributeIndex) {
+        int numValues = store.attribute(attributeIndex).numValues();
+        int[] codes = store.codes(attributeIndex);
+        int[] bounds = new int[numValues + 1];
+
+        for(int i = from; i < to; ++i) {
+            ++bounds[codes[rows[i]] + 1];
+        }
 
-        while(instEnum.hasMoreElements()) {
-            Instance inst = (Instance)instEnum.nextElement();
-            splitData[(int)inst.value(att)].add(inst);
+        bounds[0] = from;
+        for(int j = 0; j < numValues; ++j) {
+            bounds[j + 1] += bounds[j];
         }
 
-        for(int i = 0; i < splitData.length; ++i) {
-            splitData[i].compactify();
+        int[] next = Arrays.copyOf(bounds, numValues);
+
+        for(int j = 0; j < numValues; ++j) {
+            while(next[j] < bounds[j + 1]) {
+                int row = rows[next[j]];
+                int code = codes[row];
+
+                if (code == j) {
+                    ++next[j];
+                } else {
+                    rows[next[j]] = rows[next[code]];
+                    rows[next[code]++] = row;
+                }
+            }
         }
 
-        return splitData;
+        return bounds;
     }
 
-    private double computeInfoGain(Instances data, Attribute att) throws Exception {
-        double infoGain = this.computeEntropy(data);
-        Instances[] splitData = this.splitData(data, att);
+    /**
+     * Menghitung information gain satu attribut dari tabel kontingensi node, entropy adalah entropy node itu sendiri
+     */
+    private double computeInfoGain(myContingencyTable table, double entropy, int attributeIndex) {
+        double infoGain = entropy;
+        double total = table.total();
 
-        for(int j = 0; j < att.numValues(); ++j) {
-            if (splitData[j].numInstances() > 0) {
-                infoGain -= (double)splitData[j].numInstances() / (double)data.numInstances() * this.computeEntropy(splitData[j]);
+        for(int j = 0; j < table.numValues(attributeIndex); ++j) {
+            double weight = table.weight(attributeIndex, j);
+
+            if (weight > 0) {
+                infoGain -= weight / total * this.computeEntropy(table.counts(), table.offset(attributeIndex, j), table.numClasses(), weight);
             }
         }
 
         return infoGain;
     }
 
-    private double computeEntropy(Instances data) throws Exception {
-        double[] classCounts = new double[data.numClasses()];
-
-        Instance inst;
-        for(Enumeration instEnum = data.enumerateInstances(); instEnum.hasMoreElements(); ++classCounts[(int)inst.classValue()]) {
-            inst = (Instance)instEnum.nextElement();
+    /**
+     * Menghitung information gain semua attribut yang belum dipakai sekaligus dalam satu kali jalan atas nilai yang
+     * tersimpan saja, jumlah untuk nilai pertama (0) didapat dari jumlah per kelas seluruh rows[from, to)
+     */
+    private void computeSparseInfoGains(myColumnStore store, int[] rows, int from, int to, long[] usedAttributes, double[] infoGains) {
+        int numClasses = store.numClasses();
+        double[][][] counts = new double[store.numAttributes()][][];
+        double[] classCounts = new double[numClasses];
+        double total = 0.0D;
+
+        for(int i = from; i < to; ++i) {
+            int row = rows[i];
+            int classCode = store.classCode(row);
+            double weight = store.weight(row);
+
+            classCounts[classCode] += weight;
+            total += weight;
+
+            for(int j : store.storedAttributes(row)) {
+                int code = store.code(row, j);
+
+                if (code > 0 && !isUsed(usedAttributes, j)) {
+                    if (counts[j] == null) {
+                        counts[j] = new double[store.attribute(j).numValues()][numClasses];
+                    }
+                    counts[j][code][classCode] += weight;
+                }
+            }
         }
 
-        double entropy = 0.0D;
+        double entropy = this.computeEntropy(classCounts, total);
 
-        for(int j = 0; j < data.numClasses(); ++j) {
-            if (classCounts[j] > 0.0D) {
-                entropy -= classCounts[j] * Utils.log2(classCounts[j]);
+        for(int j = 0; j < store.numAttributes(); ++j) {
+            if (isUsed(usedAttributes, j)) {
+                continue;
             }
+
+            // Attribut yang tidak tersimpan di rows manapun bernilai 0 semua
+            if (counts[j] == null) {
+                counts[j] = new double[1][];
+            }
+
+            double[] totals = new double[counts[j].length];
+            counts[j][0] = classCounts.clone();
+
+            for(int v = 1; v < counts[j].length; ++v) {
+                for(int c = 0; c < numClasses; ++c) {
+                    counts[j][0][c] -= counts[j][v][c];
+                    totals[v] += counts[j][v][c];
+                }
+            }
+
+            for(int c = 0; c < numClasses; ++c) {
+                totals[0] += counts[j][0][c];
+            }
+
+            double infoGain = entropy;
+
+            for(int v = 0; v < counts[j].length; ++v) {
+                if (totals[v] > 0) {
+                    infoGain -= totals[v] / total * this.computeEntropy(counts[j][v], totals[v]);
+                }
+            }
+
+            infoGains[j] = infoGain;
         }
+    }
+
+    private double computeEntropy(myColumnStore store, int[] rows, int from, int to) {
+        double[] classCounts = new double[store.numClasses()];
+        double total = 0.0D;
+
+        for(int i = from; i < to; ++i) {
+            classCounts[store.classCode(rows[i])] += store.weight(rows[i]);
+            total += store.weight(rows[i]);
+        }
+
+        return computeEntropy(classCounts, total);
+    }
+
+    private double computeEntropy(double[] classCounts, double total) {
+        return this.computeEntropy(classCounts, 0, classCounts.length, total);
+    }
 
-        entropy /= (double)data.numInstances();
-        return entropy + Utils.log2((double)data.numInstances());
+    /**
+     * Entropy dari numClasses jumlah per kelas yang dimulai di counts[from]
+     */
+    private double computeEntropy(double[] counts, int from, int numClasses, double total) {
+        return myEntropy.entropy(counts, from, numClasses, total);
     }
 
     public double classifyInstance(Instance instance) throws NoSupportForMissingValuesException {
         if (instance.hasMissingValue()) {
             throw new NoSupportForMissingValuesException("Id3: no missing values, please.");
-        } else {
-            return this.m_Attribute == null ? this.m_ClassValue : this.m_Successors[(int)instance.value(this.m_Attribute)].classifyInstance(instance);
         }
+
+        long start = myMetrics.start();
+        double result = this.m_CompiledTree != null ? this.m_CompiledTree.classifyInstance(instance) : this.leafOf(instance).m_ClassValue;
+        myMetrics.recordPrediction(start);
+
+        return result;
     }
 
     public double[] distributionForInstance(Instance instance) throws NoSupportForMissingValuesException {
         if (instance.hasMissingValue()) {
             throw new NoSupportForMissingValuesException("Id3: no missing values, please.");
+        }
+
+        long start = myMetrics.start();
+        double[] result = this.m_CompiledTree != null ? this.m_CompiledTree.distributionForInstance(instance) : this.leafOf(instance).m_Distribution;
+        myMetrics.recordPrediction(start);
+
+        return result;
+    }
+
+    /**
+     * Mencari leaf yang dicapai instance dari node ini
+     */
+    private myID3 leafOf(Instance instance) {
+        myID3 node = this;
+        int numSplits = 0;
+
+        while(node.m_Attribute != null) {
+            node = node.m_Successors[(int)instance.value(node.m_Attribute)];
+            ++numSplits;
+        }
+
+        myMetrics.recordPath(numSplits);
+        return node;
+    }
+
+    /**
+     * Mengklasifikasikan semua instance sekaligus, per blok baris dan paralel sesuai -P
+     */
+    public double[] classifyInstances(Instances data) throws NoSupportForMissingValuesException {
+        checkForMissingValues(data);
+        long start = myMetrics.start();
+        myCompiledTree tree = this.batchTree();
+        double[] result = new double[data.numInstances()];
+
+        myForkJoin.forEachBlock(this.m_NumThreads, result.length, BATCH_BLOCK_SIZE, (from, to) -> {
+            for(int i = from; i < to; ++i) {
+                result[i] = tree.classifyInstance(data.instance(i));
+            }
+        });
+
+        myMetrics.recordBatch(start, result.length);
+        return result;
+    }
+
+    /**
+     * Menghitung distribusi kelas semua instance sekaligus, per blok baris dan paralel sesuai -P
+     */
+    public double[][] distributionsForInstances(Instances data) throws NoSupportForMissingValuesException {
+        checkForMissingValues(data);
+        long start = myMetrics.start();
+        myCompiledTree tree = this.batchTree();
+        double[][] result = new double[data.numInstances()][data.numClasses()];
+
+        myForkJoin.forEachBlock(this.m_NumThreads, result.length, BATCH_BLOCK_SIZE, (from, to) -> {
+            for(int i = from; i < to; ++i) {
+                tree.distributionForInstance(data.instance(i), result[i]);
+            }
+        });
+
+        myMetrics.recordBatch(start, result.length);
+        return result;
+    }
+
+    /**
+     * Mengklasifikasikan matriks nilai attribut, satu baris per instance dengan susunan kolom seperti header training
+     */
+    public double[] classifyRows(double[][] rows) throws NoSupportForMissingValuesException {
+        checkForMissingValues(rows);
+        long start = myMetrics.start();
+        myCompiledTree tree = this.batchTree();
+        double[] result = new double[rows.length];
+
+        myForkJoin.forEachBlock(this.m_NumThreads, rows.length, BATCH_BLOCK_SIZE, (from, to) -> {
+            for(int i = from; i < to; ++i) {
+                result[i] = tree.classifyRow(rows[i]);
+            }
+        });
+
+        myMetrics.recordBatch(start, rows.length);
+        return result;
+    }
+
+    /**
+     * Menghitung distribusi kelas matriks nilai attribut, satu baris per instance
+     */
+    public double[][] distributionsForRows(double[][] rows) throws NoSupportForMissingValuesException {
+        checkForMissingValues(rows);
+        long start = myMetrics.start();
+        myCompiledTree tree = this.batchTree();
+        double[][] result = new double[rows.length][tree.getNumClasses()];
+
+        myForkJoin.forEachBlock(this.m_NumThreads, rows.length, BATCH_BLOCK_SIZE, (from, to) -> {
+            for(int i = from; i < to; ++i) {
+                tree.distributionForRow(rows[i], result[i]);
+            }
+        });
+
+        myMetrics.recordBatch(start, rows.length);
+        return result;
+    }
+
+    /**
+     * Tree hasil kompilasi untuk prediksi batch, tanpa -C dikompilasi sekali pada batch pertama lalu disimpan
+     */
+    private synchronized myCompiledTree batchTree() {
+        if (this.m_CompiledTree != null) {
+            return this.m_CompiledTree;
+        }
+        if (this.m_BatchCompiledTree == null) {
+            this.m_BatchCompiledTree = this.compile();
+        }
+        return this.m_BatchCompiledTree;
+    }
+
+    private static void checkForMissingValues(Instances data) throws NoSupportForMissingValuesException {
+        for(int i = 0; i < data.numInstances(); ++i) {
+            if (data.instance(i).hasMissingValue()) {
+                throw new NoSupportForMissingValuesException("Id3: no missing values, please.");
+            }
+        }
+    }
+
+    private static void checkForMissingValues(myColumnStore store) throws NoSupportForMissingValuesException {
+        for(int j = 0; j < store.numAttributes(); ++j) {
+            if (j == store.classIndex()) {
+                continue;
+            }
+
+            for(int code : store.codes(j)) {
+                if (code == myColumnStore.MISSING_CODE) {
+                    throw new NoSupportForMissingValuesException("Id3: no missing values, please.");
+                }
+            }
+        }
+    }
+
+    private void checkForMissingValues(double[][] rows) throws NoSupportForMissingValuesException {
+        for(double[] row : rows) {
+            for(int j = 0; j < row.length; ++j) {
+                if (j != this.m_ClassIndex && Instance.isMissingValue(row[j])) {
+                    throw new NoSupportForMissingValuesException("Id3: no missing values, please.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Meratakan tree menjadi array untuk prediksi yang cepat
+     */
+    public myCompiledTree compile() {
+        // tree hasil myTreeFile hanya punya versi kompilasi
+        if (this.m_Attribute == null && this.m_Distribution == null && this.m_CompiledTree != null) {
+            return this.m_CompiledTree;
+        }
+
+        myCompiledTree.Builder builder = new myCompiledTree.Builder(this.numClasses());
+        this.compileInto(builder, 0);
+        return builder.build(null);
+    }
+
+    /**
+     * Header dataset training
+     */
+    Instances getHeader() {
+        return this.m_Header;
+    }
+
+    /**
+     * Membuat myID3 yang memprediksi hanya dengan tree hasil kompilasi, dipakai oleh myTreeFile
+     */
+    static myID3 fromCompiledTree(Instances header, myCompiledTree tree) {
+        myID3 result = new myID3();
+        result.m_Header = header;
+        result.m_ClassAttribute = header.classAttribute();
+        result.m_ClassIndex = header.classIndex();
+        result.m_UseCompiledTree = true;
+        result.m_CompiledTree = tree;
+        return result;
+    }
+
+    private int numClasses() {
+        return this.m_Attribute == null ? this.m_Distribution.length : this.m_Successors[0].numClasses();
+    }
+
+    private void compileInto(myCompiledTree.Builder builder, int slot) {
+        if (this.m_Attribute == null) {
+            builder.setLeaf(slot, this.m_Distribution, this.m_ClassValue);
         } else {
-            return this.m_Attribute == null ? this.m_Distribution : this.m_Successors[(int)instance.value(this.m_Attribute)].distributionForInstance(instance);
+            int firstChild = builder.reserve(this.m_Successors.length);
+            builder.setNominalSplit(slot, this.m_Attribute.index(), firstChild);
+
+            for(int j = 0; j < this.m_Successors.length; ++j) {
+                this.m_Successors[j].compileInto(builder, firstChild + j);
+            }
         }
     }
 
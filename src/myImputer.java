@@ -0,0 +1,262 @@
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.Serializable;
+
+/**
+ * Replacement values for missing attribute values.
+ * The most common value (nominal) or the mean (numeric) of every
+ * attribute is collected per class in one pass over the training data,
+ * together with the same value over all classes for instances whose
+ * class is not known yet, as at prediction time. Values that a sparse
+ * instance does not store count as 0.
+ */
+public class myImputer implements Serializable {
+
+    private final int classIndex;
+
+    // [attribute][class], the value used for an instance of that class
+    private final double[][] classValues;
+
+    // [attribute], the value used when the class is unknown
+    private final double[] values;
+
+    private myImputer(int classIndex, double[][] classValues, double[] values) {
+        this.classIndex = classIndex;
+        this.classValues = classValues;
+        this.values = values;
+    }
+
+    /**
+     * collect the mode and mean tables of the instances
+     */
+    public static myImputer build(Instances instances) {
+        int numAttributes = instances.numAttributes();
+        int numClasses = instances.numClasses();
+        double[][][] counts = newCounts(instances);
+
+        // weight per class, and per attribute the weight of its stored values per class
+        double[] classWeights = new double[numClasses];
+        double[][] storedWeights = new double[numAttributes][numClasses];
+
+        for (int i = 0; i < instances.numInstances(); ++i) {
+            Instance instance = instances.instance(i);
+
+            if (instance.classIsMissing()) {
+                continue;
+            }
+
+            int classValue = (int)instance.classValue();
+            double weight = instance.weight();
+            classWeights[classValue] += weight;
+
+            // a sparse instance only visits its stored values, the others are 0
+            for (int k = 0; k < instance.numValues(); ++k) {
+                int j = instance.index(k);
+                double value = instance.valueSparse(k);
+
+                if (counts[j] == null) {
+                    continue;
+                }
+
+                storedWeights[j][classValue] += weight;
+
+                if (Instance.isMissingValue(value)) {
+                    continue;
+                }
+
+                if (instances.attribute(j).isNominal()) {
+                    counts[j][classValue][(int)value] += weight;
+                } else {
+                    counts[j][classValue][0] += weight * value;
+                    counts[j][classValue][1] += weight;
+                }
+            }
+        }
+
+        for (int j = 0; j < numAttributes; ++j) {
+            if (counts[j] == null) {
+                continue;
+            }
+
+            for (int c = 0; c < numClasses; ++c) {
+                double zeroWeight = classWeights[c] - storedWeights[j][c];
+
+                if (zeroWeight > 0) {
+                    // value 0 is the first value of a nominal attribute, and adds no sum to a numeric one
+                    counts[j][c][instances.attribute(j).isNominal() ? 0 : 1] += zeroWeight;
+                }
+            }
+        }
+
+        return fromCounts(instances, counts);
+    }
+
+    /**
+     * collect the mode and mean tables of the rows of a column store
+     * with a known class
+     */
+    public static myImputer build(myColumnStore store) {
+        Instances header = store.getHeader();
+        double[][][] counts = newCounts(header);
+
+        for (int j = 0; j < counts.length; ++j) {
+            if (counts[j] == null) {
+                continue;
+            }
+
+            boolean isNominal = header.attribute(j).isNominal();
+
+            for (int i = 0; i < store.numRows(); ++i) {
+                int classValue = store.classCode(i);
+                double value = store.value(i, j);
+
+                if (classValue == myColumnStore.MISSING_CODE || Instance.isMissingValue(value)) {
+                    continue;
+                }
+
+                if (isNominal) {
+                    counts[j][classValue][(int)value] += store.weight(i);
+                } else {
+                    counts[j][classValue][0] += store.weight(i) * value;
+                    counts[j][classValue][1] += store.weight(i);
+                }
+            }
+        }
+
+        return fromCounts(header, counts);
+    }
+
+    /**
+     * create the empty count tables of every attribute but the class,
+     * nominal: [class][value] weight, numeric: [class][0] sum and [class][1] weight
+     */
+    private static double[][][] newCounts(Instances header) {
+        double[][][] counts = new double[header.numAttributes()][][];
+
+        for (int j = 0; j < counts.length; ++j) {
+            if (j == header.classIndex()) {
+                continue;
+            }
+
+            int numSlots = header.attribute(j).isNominal() ? header.attribute(j).numValues() : 2;
+            counts[j] = new double[header.numClasses()][numSlots];
+        }
+
+        return counts;
+    }
+
+    /**
+     * turn the count tables into the replacement values, per class and
+     * over all classes
+     */
+    private static myImputer fromCounts(Instances header, double[][][] counts) {
+        int numAttributes = header.numAttributes();
+        int numClasses = header.numClasses();
+        double[][] classValues = new double[numAttributes][];
+        double[] values = new double[numAttributes];
+
+        for (int j = 0; j < numAttributes; ++j) {
+            if (counts[j] == null) {
+                continue;
+            }
+
+            boolean isNominal = header.attribute(j).isNominal();
+            double[] total = new double[counts[j][0].length];
+
+            for (int c = 0; c < numClasses; ++c) {
+                for (int k = 0; k < total.length; ++k) {
+                    total[k] += counts[j][c][k];
+                }
+            }
+
+            values[j] = isNominal ? mostCommon(total) : mean(total);
+            classValues[j] = new double[numClasses];
+
+            for (int c = 0; c < numClasses; ++c) {
+                double value = isNominal ? mostCommon(counts[j][c]) : mean(counts[j][c]);
+                classValues[j][c] = Instance.isMissingValue(value) ? values[j] : value;
+            }
+
+            if (Instance.isMissingValue(values[j])) {
+                values[j] = 0;
+
+                for (int c = 0; c < numClasses; ++c) {
+                    classValues[j][c] = 0;
+                }
+            }
+        }
+
+        return new myImputer(header.classIndex(), classValues, values);
+    }
+
+    /**
+     * return the index of the highest count, or missing when
+     * every count is zero
+     */
+    private static double mostCommon(double[] counts) {
+        int maxIdx = -1;
+        double max = 0;
+
+        for (int i = 0; i < counts.length; ++i) {
+            if (counts[i] > max) {
+                max = counts[i];
+                maxIdx = i;
+            }
+        }
+
+        return maxIdx == -1 ? Instance.missingValue() : maxIdx;
+    }
+
+    /**
+     * return the mean of a sum and weight pair, or missing when
+     * there is no weight
+     */
+    private static double mean(double[] sumAndWeight) {
+        return sumAndWeight[1] > 0 ? sumAndWeight[0] / sumAndWeight[1] : Instance.missingValue();
+    }
+
+    /**
+     * return the replacement of a missing value for an instance
+     * of the given class
+     */
+    public double value(int attributeIndex, int classValue) {
+        return classValues[attributeIndex][classValue];
+    }
+
+    /**
+     * return the replacement of a missing value when the class
+     * is not known
+     */
+    public double value(int attributeIndex) {
+        return values[attributeIndex];
+    }
+
+    /**
+     * return the replacements used when the class is not known,
+     * one per attribute
+     */
+    public double[] getValues() {
+        return values.clone();
+    }
+
+    /**
+     * return a copy of the instance with its missing values replaced,
+     * the instance itself is returned when it has none
+     */
+    public Instance impute(Instance instance) {
+        if (!instance.hasMissingValue()) {
+            return instance;
+        }
+
+        Instance result = (Instance)instance.copy();
+
+        for (int j = 0; j < result.numAttributes(); ++j) {
+            if (j != classIndex && result.isMissing(j)) {
+                result.setValue(j, values[j]);
+            }
+        }
+
+        return result;
+    }
+}
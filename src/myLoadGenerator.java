@@ -0,0 +1,219 @@
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for myPredictionServer. A number of clients post the
+ * rows of an ARFF file, a few per request, back to back for a while, and
+ * the throughput and latency percentiles of the requests after the
+ * warm-up are reported.
+ *
+ *   java myLoadGenerator [-c clients] [-r rows per request] [-s seconds]
+ *                        [-w warm-up seconds] url data.arff
+ */
+public class myLoadGenerator {
+
+    private myLoadGenerator() {
+
+    }
+
+    /**
+     * the rows of the data as lines of comma separated values, the class
+     * left out
+     */
+    static String[] toLines(Instances data) {
+        String[] lines = new String[data.numInstances()];
+
+        for (int i = 0; i < lines.length; ++i) {
+            Instance instance = data.instance(i);
+            StringBuilder line = new StringBuilder();
+
+            for (int j = 0; j < data.numAttributes(); ++j) {
+                if (j == data.classIndex()) {
+                    continue;
+                }
+                if (line.length() > 0) {
+                    line.append(',');
+                }
+                line.append(instance.isMissing(j) ? "?" : instance.toString(j));
+            }
+
+            lines[i] = line.toString();
+        }
+
+        return lines;
+    }
+
+    /**
+     * post a body and return the answer, an answer other than 200 is an
+     * IOException
+     */
+    static String post(URL url, byte[] body) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(body.length);
+        connection.setRequestProperty("Content-Type", "text/plain; charset=utf-8");
+
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+
+        int status = connection.getResponseCode();
+        InputStream in = status == 200 ? connection.getInputStream() : connection.getErrorStream();
+        ByteArrayOutputStream answer = new ByteArrayOutputStream();
+
+        if (in != null) {
+            try (InputStream stream = in) {
+                byte[] buffer = new byte[8192];
+                int read;
+
+                while ((read = stream.read(buffer)) != -1) {
+                    answer.write(buffer, 0, read);
+                }
+            }
+        }
+
+        String result = new String(answer.toByteArray(), StandardCharsets.UTF_8);
+
+        if (status != 200) {
+            throw new IOException("HTTP " + status + ": " + result.trim());
+        }
+
+        return result;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int numClients = 8;
+        int rowsPerRequest = 1;
+        int seconds = 10;
+        int warmUpSeconds = 2;
+        int argument = 0;
+
+        for (; argument < args.length && args[argument].startsWith("-"); argument += 2) {
+            int value = Integer.parseInt(args[argument + 1]);
+
+            switch (args[argument]) {
+                case "-c":
+                    numClients = value;
+                    break;
+                case "-r":
+                    rowsPerRequest = value;
+                    break;
+                case "-s":
+                    seconds = value;
+                    break;
+                case "-w":
+                    warmUpSeconds = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[argument]);
+            }
+        }
+
+        if (args.length - argument != 2) {
+            System.err.println("Usage: java myLoadGenerator [-c clients] [-r rows per request] [-s seconds]"
+                    + " [-w warm-up seconds] url data.arff");
+            System.exit(1);
+        }
+
+        URL url = new URL(args[argument]);
+        Instances data = ConverterUtils.DataSource.read(args[argument + 1]);
+        data.setClassIndex(data.numAttributes() - 1);
+
+        String[] lines = toLines(data);
+        byte[][] bodies = new byte[(lines.length + rowsPerRequest - 1) / rowsPerRequest][];
+
+        for (int b = 0; b < bodies.length; ++b) {
+            int from = b * rowsPerRequest;
+            int to = Math.min(lines.length, from + rowsPerRequest);
+            bodies[b] = (String.join("\n", Arrays.copyOfRange(lines, from, to)) + "\n").getBytes(StandardCharsets.UTF_8);
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmUpSeconds * 1000000000L;
+        long end = measureFrom + seconds * 1000000000L;
+        AtomicLong nextBody = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long[][] latencies = new long[numClients][];
+        int[] numMeasured = new int[numClients];
+        Thread[] clients = new Thread[numClients];
+
+        for (int c = 0; c < numClients; ++c) {
+            final int client = c;
+            latencies[c] = new long[1024];
+
+            clients[c] = new Thread(() -> {
+                long now;
+
+                while ((now = System.nanoTime()) < end) {
+                    byte[] body = bodies[(int) (nextBody.getAndIncrement() % bodies.length)];
+
+                    try {
+                        post(url, body);
+                    } catch (IOException e) {
+                        errors.incrementAndGet();
+                        continue;
+                    }
+
+                    long done = System.nanoTime();
+
+                    if (now >= measureFrom && done < end) {
+                        if (numMeasured[client] == latencies[client].length) {
+                            latencies[client] = Arrays.copyOf(latencies[client], 2 * numMeasured[client]);
+                        }
+                        latencies[client][numMeasured[client]++] = done - now;
+                    }
+                }
+            });
+            clients[c].start();
+        }
+
+        for (Thread client : clients) {
+            client.join();
+        }
+
+        int total = 0;
+        for (int count : numMeasured) {
+            total += count;
+        }
+
+        long[] all = new long[total];
+        int filled = 0;
+
+        for (int c = 0; c < numClients; ++c) {
+            System.arraycopy(latencies[c], 0, all, filled, numMeasured[c]);
+            filled += numMeasured[c];
+        }
+
+        Arrays.sort(all);
+
+        System.out.println("clients " + numClients + ", rows per request " + rowsPerRequest + ", " + seconds + " s");
+        System.out.printf("requests/s %.1f, rows/s %.1f, errors %d%n",
+                (double) total / seconds, (double) total * rowsPerRequest / seconds, errors.get());
+
+        if (total > 0) {
+            System.out.printf("latency ms: p50 %.3f, p90 %.3f, p99 %.3f, max %.3f%n",
+                    percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), all[total - 1] / 1e6);
+        }
+    }
+
+    /**
+     * return a percentile of sorted nanoseconds in milliseconds
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+}
@@ -0,0 +1,365 @@
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Opt-in runtime metrics of training and prediction, registered as the
+ * MBean myTrees:type=Metrics. They are off until enable is called or
+ * the JVM runs with -DmyTrees.metrics=true. While they are off, every
+ * recording point costs one read of a volatile field; while they are on
+ * the counters are LongAdders, which threads update without contention.
+ *
+ * A recording point looks like
+ *
+ *   long start = myMetrics.start();
+ *   ...
+ *   myMetrics.recordScoring(start);
+ *
+ * start returns 0 when the metrics are off and the record methods then
+ * do nothing, also when the metrics were switched on in between.
+ */
+public class myMetrics implements myMetricsMXBean {
+
+    public static final String OBJECT_NAME = "myTrees:type=Metrics";
+
+    private static final int NUM_BUCKETS = 64;
+
+    private static volatile myMetrics instance = null;
+
+    static {
+        if (Boolean.getBoolean("myTrees.metrics")) {
+            enable();
+        }
+    }
+
+    private final LongAdder treesBuilt = new LongAdder();
+    private final LongAdder trainingNanos = new LongAdder();
+    private final LongAdder nodesBuilt = new LongAdder();
+    private final LongAdder leavesBuilt = new LongAdder();
+    private final LongAdder scoringNanos = new LongAdder();
+    private final LongAdder partitioningNanos = new LongAdder();
+    private final LongAdder pruningNanos = new LongAdder();
+    private final LongAdder[] leafDepths = newHistogram();
+
+    private final LongAdder predictions = new LongAdder();
+    private final LongAdder batchPredictions = new LongAdder();
+    private final LongAdder batchRowsPredicted = new LongAdder();
+    private final LongAdder[] predictionLatencies = newHistogram();
+    private final LongAdder[] batchLatencies = newHistogram();
+    private final LongAdder[] pathLengths = newHistogram();
+
+    private myMetrics() {
+
+    }
+
+    /**
+     * switch the metrics on and register their MBean, unless they are
+     * on already, and return them
+     */
+    public static synchronized myMetrics enable() {
+        if (instance == null) {
+            myMetrics metrics = new myMetrics();
+
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                ObjectName name = new ObjectName(OBJECT_NAME);
+
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+                server.registerMBean(metrics, name);
+            } catch (JMException e) {
+                throw new IllegalStateException("Can not register " + OBJECT_NAME, e);
+            }
+
+            instance = metrics;
+        }
+
+        return instance;
+    }
+
+    /**
+     * switch the metrics off and unregister their MBean
+     */
+    public static synchronized void disable() {
+        if (instance == null) {
+            return;
+        }
+
+        instance = null;
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            // already unregistered by someone else
+        }
+    }
+
+    /**
+     * return the metrics, or null when they are off
+     */
+    public static myMetrics get() {
+        return instance;
+    }
+
+    /**
+     * return the start time of a recorded span, 0 when the metrics are off
+     */
+    public static long start() {
+        return instance == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * return the nanoseconds since start, or -1 when there is nothing to
+     * record to
+     */
+    private static long elapsed(myMetrics metrics, long start) {
+        return metrics == null || start == 0 ? -1 : System.nanoTime() - start;
+    }
+
+    public static void recordTraining(long start) {
+        myMetrics metrics = instance;
+        long nanos = elapsed(metrics, start);
+
+        if (nanos >= 0) {
+            metrics.treesBuilt.increment();
+            metrics.trainingNanos.add(nanos);
+        }
+    }
+
+    public static void recordScoring(long start) {
+        myMetrics metrics = instance;
+        long nanos = elapsed(metrics, start);
+
+        if (nanos >= 0) {
+            metrics.scoringNanos.add(nanos);
+        }
+    }
+
+    public static void recordPartitioning(long start) {
+        myMetrics metrics = instance;
+        long nanos = elapsed(metrics, start);
+
+        if (nanos >= 0) {
+            metrics.partitioningNanos.add(nanos);
+        }
+    }
+
+    public static void recordPruning(long start) {
+        myMetrics metrics = instance;
+        long nanos = elapsed(metrics, start);
+
+        if (nanos >= 0) {
+            metrics.pruningNanos.add(nanos);
+        }
+    }
+
+    /**
+     * count a node built at a depth, a leaf also in the depth histogram
+     */
+    public static void recordNode(int depth, boolean isLeaf) {
+        myMetrics metrics = instance;
+
+        if (metrics != null) {
+            metrics.nodesBuilt.increment();
+
+            if (isLeaf) {
+                metrics.leavesBuilt.increment();
+                metrics.leafDepths[Math.min(depth, NUM_BUCKETS - 1)].increment();
+            }
+        }
+    }
+
+    public static void recordPrediction(long start) {
+        myMetrics metrics = instance;
+        long nanos = elapsed(metrics, start);
+
+        if (nanos >= 0) {
+            metrics.predictions.increment();
+            metrics.predictionLatencies[bucket(nanos)].increment();
+        }
+    }
+
+    public static void recordBatch(long start, int numRows) {
+        myMetrics metrics = instance;
+        long nanos = elapsed(metrics, start);
+
+        if (nanos >= 0) {
+            metrics.batchPredictions.increment();
+            metrics.batchRowsPredicted.add(numRows);
+            metrics.batchLatencies[bucket(nanos)].increment();
+        }
+    }
+
+    /**
+     * count the number of splits a prediction tested in one tree
+     */
+    public static void recordPath(int length) {
+        myMetrics metrics = instance;
+
+        if (metrics != null) {
+            metrics.pathLengths[Math.min(length, NUM_BUCKETS - 1)].increment();
+        }
+    }
+
+    /**
+     * return the histogram bucket of a number of nanoseconds, i for
+     * [2^(i-1), 2^i)
+     */
+    private static int bucket(long nanos) {
+        return Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    private static LongAdder[] newHistogram() {
+        LongAdder[] histogram = new LongAdder[NUM_BUCKETS];
+
+        for (int i = 0; i < NUM_BUCKETS; ++i) {
+            histogram[i] = new LongAdder();
+        }
+
+        return histogram;
+    }
+
+    private static long[] snapshot(LongAdder[] histogram) {
+        long[] result = new long[histogram.length];
+
+        for (int i = 0; i < histogram.length; ++i) {
+            result[i] = histogram[i].sum();
+        }
+
+        return result;
+    }
+
+    /**
+     * return the upper bound in microseconds of the bucket holding the
+     * given fraction of a latency histogram, 0 when it is empty
+     */
+    private static double percentileMicros(long[] histogram, double fraction) {
+        long total = 0;
+
+        for (long count : histogram) {
+            total += count;
+        }
+
+        long wanted = (long) Math.ceil(fraction * total);
+        long seen = 0;
+
+        for (int i = 0; i < histogram.length && total > 0; ++i) {
+            seen += histogram[i];
+
+            if (seen >= wanted) {
+                return (1L << i) / 1000.0;
+            }
+        }
+
+        return 0;
+    }
+
+    private static long millis(LongAdder nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+    }
+
+    @Override
+    public long getTreesBuilt() {
+        return treesBuilt.sum();
+    }
+
+    @Override
+    public long getTrainingMillis() {
+        return millis(trainingNanos);
+    }
+
+    @Override
+    public long getNodesBuilt() {
+        return nodesBuilt.sum();
+    }
+
+    @Override
+    public long getLeavesBuilt() {
+        return leavesBuilt.sum();
+    }
+
+    @Override
+    public double getNodesBuiltPerSecond() {
+        long nanos = trainingNanos.sum();
+
+        return nanos == 0 ? 0 : nodesBuilt.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public long getScoringMillis() {
+        return millis(scoringNanos);
+    }
+
+    @Override
+    public long getPartitioningMillis() {
+        return millis(partitioningNanos);
+    }
+
+    @Override
+    public long getPruningMillis() {
+        return millis(pruningNanos);
+    }
+
+    @Override
+    public long[] getLeafDepthHistogram() {
+        return snapshot(leafDepths);
+    }
+
+    @Override
+    public long getPredictions() {
+        return predictions.sum();
+    }
+
+    @Override
+    public long getBatchPredictions() {
+        return batchPredictions.sum();
+    }
+
+    @Override
+    public long getBatchRowsPredicted() {
+        return batchRowsPredicted.sum();
+    }
+
+    @Override
+    public long[] getPredictionLatencyHistogram() {
+        return snapshot(predictionLatencies);
+    }
+
+    @Override
+    public long[] getBatchLatencyHistogram() {
+        return snapshot(batchLatencies);
+    }
+
+    @Override
+    public double getPredictionLatencyP50Micros() {
+        return percentileMicros(getPredictionLatencyHistogram(), 0.5);
+    }
+
+    @Override
+    public double getPredictionLatencyP99Micros() {
+        return percentileMicros(getPredictionLatencyHistogram(), 0.99);
+    }
+
+    @Override
+    public long[] getPathLengthHistogram() {
+        return snapshot(pathLengths);
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder counter : new LongAdder[] {treesBuilt, trainingNanos, nodesBuilt, leavesBuilt, scoringNanos,
+                partitioningNanos, pruningNanos, predictions, batchPredictions, batchRowsPredicted}) {
+            counter.reset();
+        }
+
+        for (LongAdder[] histogram : new LongAdder[][] {leafDepths, predictionLatencies, batchLatencies, pathLengths}) {
+            for (LongAdder counter : histogram) {
+                counter.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * The metrics of myMetrics as seen over JMX. A histogram is an array of
+ * counts, see the getter for what index i stands for. Times are summed
+ * over every thread, so with a pool they can add up to more than the
+ * time the builds took.
+ */
+public interface myMetricsMXBean {
+
+    /**
+     * return the number of trees built by myC45, myID3 and myForest
+     */
+    long getTreesBuilt();
+
+    /**
+     * return the time spent in buildClassifier, in milliseconds
+     */
+    long getTrainingMillis();
+
+    long getNodesBuilt();
+
+    long getLeavesBuilt();
+
+    /**
+     * return the nodes built per second of training time
+     */
+    double getNodesBuiltPerSecond();
+
+    /**
+     * return the time spent choosing the split of a node, in milliseconds
+     */
+    long getScoringMillis();
+
+    /**
+     * return the time spent splitting the rows of a node over its
+     * children, in milliseconds
+     */
+    long getPartitioningMillis();
+
+    /**
+     * return the time spent pruning, in milliseconds
+     */
+    long getPruningMillis();
+
+    /**
+     * return at index i the number of leaves grown at depth i, the root
+     * is depth 0 and the last index holds everything deeper
+     */
+    long[] getLeafDepthHistogram();
+
+    /**
+     * return the number of single instance predictions
+     */
+    long getPredictions();
+
+    /**
+     * return the number of batch prediction calls
+     */
+    long getBatchPredictions();
+
+    /**
+     * return the number of instances or rows predicted in batch calls
+     */
+    long getBatchRowsPredicted();
+
+    /**
+     * return at index i the number of single instance predictions that
+     * took at least 2^(i-1) and less than 2^i nanoseconds
+     */
+    long[] getPredictionLatencyHistogram();
+
+    /**
+     * return at index i the number of batch calls that took at least
+     * 2^(i-1) and less than 2^i nanoseconds
+     */
+    long[] getBatchLatencyHistogram();
+
+    /**
+     * return the latency of single predictions that half of them stay
+     * under, in microseconds, rounded up to a power of 2 nanoseconds
+     */
+    double getPredictionLatencyP50Micros();
+
+    /**
+     * return the latency of single predictions that 99% of them stay
+     * under, in microseconds, rounded up to a power of 2 nanoseconds
+     */
+    double getPredictionLatencyP99Micros();
+
+    /**
+     * return at index i the number of predictions that tested i splits
+     * on their way down a tree, every branch of a spread instance counted
+     */
+    long[] getPathLengthHistogram();
+
+    /**
+     * set every metric back to 0
+     */
+    void reset();
+}
@@ -1,10 +1,10 @@
 import weka.classifiers.Classifier;
-import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Utils;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class myModel extends Classifier {
 
@@ -24,6 +24,11 @@ public class myModel extends Classifier {
     private boolean built = false;
     private boolean noSplit = false;
 
+    // the weight at least two subsets need for the split to count
+    private double minLeafWeight = 0;
+
+    private static final int MIXED_CLASSES = -2;
+
 
     public myModel(int splitAttributeIndex) {
         this.splitAttributeIndex = splitAttributeIndex;
@@ -33,9 +38,31 @@ public class myModel extends Classifier {
      * create a tree model without split
      */
     public static myModel createNoSplitModel(Instances instances) {
+        return createNoSplitModel(mySubset.presort(instances));
+    }
+
+    /**
+     * create a tree model without split from a view of the training data
+     */
+    public static myModel createNoSplitModel(mySubset subset) {
+        myModel model = new myModel(-1);
+        model.noSplit = true;
+        model.buildClassifier(subset);
+
+        return model;
+    }
+
+    /**
+     * create a tree model without split from the weight of every class
+     */
+    public static myModel createNoSplitModel(double[] classCounts) {
         myModel model = new myModel(-1);
         model.noSplit = true;
-        model.buildClassifier(instances);
+        model.numClasses = classCounts.length;
+        model.numValues = 1;
+        model.distribution = new double[][] {classCounts.clone()};
+        model.calculateDistribution();
+        model.built = true;
 
         return model;
     }
@@ -45,38 +72,155 @@ public class myModel extends Classifier {
      * gain ratio.
      */
     public static myModel chooseFromInstances(Instances instances) {
+        return chooseFromSubset(mySubset.presort(instances));
+    }
+
+    /**
+     * Create a tree model with the selection of attributes using
+     * gain ratio from a presorted view of the training data.
+     */
+    public static myModel chooseFromSubset(mySubset subset) {
+        return chooseFromSubset(subset, null);
+    }
+
+    /**
+     * Create a tree model with the selection of attributes using
+     * gain ratio, the attributes are scored in parallel on the pool
+     * when one is given. The first attribute with the highest gain
+     * ratio wins, the same as in the sequential run.
+     */
+    public static myModel chooseFromSubset(mySubset subset, ForkJoinPool pool) {
+        return chooseFromSubset(subset, pool, 0, null);
+    }
+
+    /**
+     * Create a tree model with the selection of attributes using gain
+     * ratio among numRandomAttributes candidates drawn with random, as in
+     * a random forest. When none of them gives a split, the remaining
+     * candidates are scored as well. 0 or at least the number of
+     * candidates scores them all, and random is not used
+     */
+    public static myModel chooseFromSubset(mySubset subset, ForkJoinPool pool, int numRandomAttributes, Random random) {
+        return chooseFromSubset(subset, pool, numRandomAttributes, random, 0);
+    }
+
+    /**
+     * Create a tree model like chooseFromSubset above, where a split only
+     * counts when at least two of its subsets weigh minLeafWeight, both
+     * sides of a numeric split. 0 puts no limit on the subsets
+     */
+    public static myModel chooseFromSubset(mySubset subset, ForkJoinPool pool, int numRandomAttributes, Random random,
+                                           double minLeafWeight) {
+        int numAttributes = subset.numAttributes();
+        int[] candidates = new int[numAttributes];
+        int numCandidates = 0;
+
+        for (int i = 0; i < numAttributes; ++i) {
+            if (isCandidate(subset, i)) {
+                candidates[numCandidates++] = i;
+            }
+        }
+
+        if (numRandomAttributes <= 0 || numRandomAttributes >= numCandidates) {
+            return chooseAmong(subset, pool, candidates, 0, numCandidates, minLeafWeight);
+        }
+
+        // draw the first numRandomAttributes candidates
+        for (int i = 0; i < numRandomAttributes; ++i) {
+            int j = i + random.nextInt(numCandidates - i);
+            int swap = candidates[i];
+            candidates[i] = candidates[j];
+            candidates[j] = swap;
+        }
+
+        myModel model = chooseAmong(subset, pool, candidates, 0, numRandomAttributes, minLeafWeight);
+
+        if (model.noSplit) {
+            model = chooseAmong(subset, pool, candidates, numRandomAttributes, numCandidates, minLeafWeight);
+        }
+
+        return model;
+    }
+
+    /**
+     * score the attributes candidates[from, to) and return the model of
+     * the best one, or a model without split when none has a gain ratio
+     */
+    private static myModel chooseAmong(mySubset subset, ForkJoinPool pool, int[] candidates, int from, int to,
+                                       double minLeafWeight) {
+        int numAttributes = subset.numAttributes();
+        boolean[] scored = new boolean[numAttributes];
+
+        for (int k = from; k < to; ++k) {
+            scored[candidates[k]] = true;
+        }
+
+        myModel[] models = new myModel[numAttributes];
+        subset.ensureHistograms();
+        myContingencyTable table = subset.isSparse() ? null
+                : subset.countNominal(i -> scored[i] && subset.attribute(i).isNominal(), pool);
+
+        myForkJoin.forEach(pool, numAttributes, i -> {
+            if (scored[i]) {
+                models[i] = new myModel(i);
+                models[i].minLeafWeight = minLeafWeight;
+
+                if (table != null && subset.attribute(i).isNominal()) {
+                    models[i].buildNominal(table);
+                    models[i].built = true;
+                } else {
+                    models[i].buildClassifier(subset);
+                }
+            }
+        });
+
         double maxGainRatio = 0;
         myModel bestModel = null;
 
-        for (int i = 0; i < instances.numAttributes(); ++i) {
-            if (i == instances.classIndex()) {
+        for (int i = 0; i < numAttributes; ++i) {
+            if (models[i] == null) {
                 continue;
             }
 
-            myModel model = new myModel(i);
-            model.buildClassifier(instances);
-
-            double gainRatio = model.getGainRatio();
+            double gainRatio = models[i].getGainRatio();
 
             if (Utils.gr(gainRatio, maxGainRatio)) {
                 maxGainRatio = gainRatio;
-                bestModel = model;
+                bestModel = models[i];
             }
         }
 
         if (bestModel == null) {
-            return createNoSplitModel(instances);
+            return createNoSplitModel(subset);
         } else {
             return bestModel;
         }
     }
 
+    /**
+     * only nominal and numeric attributes other than the class
+     * can be used to split
+     */
+    private static boolean isCandidate(mySubset subset, int attributeIndex) {
+        return attributeIndex != subset.classIndex()
+                && (subset.attribute(attributeIndex).isNominal() || subset.attribute(attributeIndex).isNumeric());
+    }
+
     @Override
     public void buildClassifier(Instances instances) {
+        buildClassifier(mySubset.presort(instances));
+    }
+
+    /**
+     * build the model from a presorted view of the training data
+     */
+    public void buildClassifier(mySubset subset) {
         if (noSplit) {
-            buildNoSplit(instances);
+            buildNoSplit(subset);
+        } else if (subset.attribute(splitAttributeIndex).isNominal()) {
+            buildNominal(subset);
         } else {
-            build(instances);
+            buildNumeric(subset);
         }
         built = true;
     }
@@ -84,71 +228,376 @@ public class myModel extends Classifier {
     /**
      * method to build a tree with out division.
      */
-    private void buildNoSplit(Instances instances) {
-        numClasses = instances.numClasses();
+    private void buildNoSplit(mySubset subset) {
+        numClasses = subset.numClasses();
         numValues = 1;
 
         distribution = new double[numValues][numClasses];
-        classDistribution = new double[numClasses];
-        valueDistribution = new double[numValues];
 
         //calculate the total appearance of each class value
-        for (int i = 0; i < instances.numInstances(); ++i) {
-            Instance instance = instances.instance(i);
-            distribution[0][(int)instance.classValue()] += 1;
+        for (int i = 0; i < subset.numRows(); ++i) {
+            distribution[0][subset.classValue(i)] += subset.weight(i);
         }
 
-        //calculate the total appearance of
+        calculateDistribution();
+
+        infoGain = 0;
+        gainRatio = 0;
+    }
+
+    /**
+     * method to build a tree model on a nominal attribute
+     */
+    private void buildNominal(mySubset subset) {
+        if (!subset.isSparse()) {
+            buildNominal(subset.countNominal(i -> i == splitAttributeIndex, null));
+            return;
+        }
+
+        numClasses = subset.numClasses();
+        numValues = subset.attribute(splitAttributeIndex).numValues();
+
+        distribution = new double[numValues][numClasses];
+        double unknown = countSparseNominal(subset);
+
+        calculateDistribution();
+        calculateGainRatio(unknown);
+    }
+
+    /**
+     * method to build a tree model on a nominal attribute from the
+     * counts of the node
+     */
+    private void buildNominal(myContingencyTable table) {
+        numClasses = table.numClasses();
+        numValues = table.numValues(splitAttributeIndex);
+
+        //calculate the appearance of certain class value in an attribut
+        distribution = new double[numValues][numClasses];
+
         for (int i = 0; i < numValues; ++i) {
             for (int j = 0; j < numClasses; ++j) {
-                classDistribution[j] += distribution[i][j];
-                valueDistribution[i] += distribution[i][j];
+                distribution[i][j] = table.count(splitAttributeIndex, i, j);
             }
         }
 
-        weights = new ArrayList<>();
-        weights.add(0.);
+        calculateDistribution();
+        calculateGainRatio(table.missingWeight(splitAttributeIndex));
+    }
 
-        infoGain = 0;
-        gainRatio = 0;
+    /**
+     * count a nominal attribute of a sparse view from its non-zero and
+     * missing values only, the first value gets the weight of every class
+     * that is left. Return the weight of the missing values
+     */
+    private double countSparseNominal(mySubset subset) {
+        double[] zero = subset.classWeights().clone();
+        double unknown = 0;
+
+        for (int p : subset.sortedPositions(splitAttributeIndex)) {
+            int classValue = subset.classValue(p);
+            distribution[(int)subset.value(p, splitAttributeIndex)][classValue] += subset.weight(p);
+            zero[classValue] -= subset.weight(p);
+        }
+
+        for (int p : subset.missingPositions(splitAttributeIndex)) {
+            unknown += subset.weight(p);
+            zero[subset.classValue(p)] -= subset.weight(p);
+        }
+
+        for (int j = 0; j < numClasses; ++j) {
+            distribution[0][j] += Utils.gr(zero[j], 0) ? zero[j] : 0;
+        }
+
+        return unknown;
     }
 
     /**
-     * method to build a tree model
+     * method to build a tree model on a numeric attribute, the presorted
+     * values are swept once and every threshold on a class boundary is
+     * scored by its gain ratio
      */
-    private void build(Instances instances) {
-        Attribute splitAttribute = instances.attribute(splitAttributeIndex);
-        boolean isNominal = splitAttribute.isNominal();
+    private void buildNumeric(mySubset subset) {
+        if (subset.isBinned()) {
+            buildNumericFromHistogram(subset);
+            return;
+        }
 
-        numClasses = instances.numClasses();
-        numValues = isNominal ? instances.numDistinctValues(splitAttributeIndex) : 2;
+        numClasses = subset.numClasses();
+        numValues = 2;
 
-        distribution = new double[numValues][numClasses];
-        classDistribution = new double[numClasses];
-        valueDistribution = new double[numValues];
+        int[] sorted = subset.sortedPositions(splitAttributeIndex);
+
+        if (subset.isSparse()) {
+            sweepSparse(subset, sorted);
+            return;
+        }
 
         double total = 0;
 
-        if (!isNominal) {
-            splitPoint = determineSplitPoint(instances);
+        for (int i = 0; i < subset.numRows(); ++i) {
+            total += subset.weight(i);
         }
 
-        //calculate the appearance of certain class value in an attribut
-        for (int i = 0; i < instances.numInstances(); ++i) {
-            Instance instance = instances.instance(i);
+        double[] values = new double[sorted.length];
+        int[] classes = new int[sorted.length];
+        double[] weights = new double[sorted.length];
+
+        for (int i = 0; i < sorted.length; ++i) {
+            values[i] = subset.value(sorted[i], splitAttributeIndex);
+            classes[i] = subset.classValue(sorted[i]);
+            weights[i] = subset.weight(sorted[i]);
+        }
+
+        sweep(values, classes, weights, sorted.length, total);
+    }
+
+    /**
+     * sweep a numeric attribute of a sparse view. The non-zero values are
+     * swept with the zeros put in between the negative and the positive
+     * ones as one entry per class, weighted by what is left of that class
+     */
+    private void sweepSparse(mySubset subset, int[] sorted) {
+        double[] zero = subset.classWeights().clone();
+        double total = 0;
+
+        for (int j = 0; j < numClasses; ++j) {
+            total += zero[j];
+        }
+
+        for (int p : sorted) {
+            zero[subset.classValue(p)] -= subset.weight(p);
+        }
+
+        for (int p : subset.missingPositions(splitAttributeIndex)) {
+            zero[subset.classValue(p)] -= subset.weight(p);
+        }
 
-            if (!instance.isMissing(splitAttributeIndex)) {
-                resolveMissingValue(instances);
+        int length = 0;
+        double[] values = new double[sorted.length + numClasses];
+        int[] classes = new int[sorted.length + numClasses];
+        double[] weights = new double[sorted.length + numClasses];
+        boolean zerosAdded = false;
+
+        for (int i = 0; i <= sorted.length; ++i) {
+            if (!zerosAdded && (i == sorted.length || subset.value(sorted[i], splitAttributeIndex) > 0)) {
+                for (int j = 0; j < numClasses; ++j) {
+                    if (Utils.gr(zero[j], 0)) {
+                        values[length] = 0;
+                        classes[length] = j;
+                        weights[length] = zero[j];
+                        ++length;
+                    }
+                }
+                zerosAdded = true;
             }
 
-            if (isNominal) {
-                distribution[(int)instance.value(splitAttributeIndex)][(int)instance.classValue()] += 1;
-            } else { //numerik
-                int value = Utils.gr(splitPoint, instance.value(splitAttributeIndex)) ? 0 : 1;
-                distribution[value][(int)instance.classValue()] += 1;
+            if (i < sorted.length) {
+                values[length] = subset.value(sorted[i], splitAttributeIndex);
+                classes[length] = subset.classValue(sorted[i]);
+                weights[length] = subset.weight(sorted[i]);
+                ++length;
             }
         }
 
+        sweep(values, classes, weights, length, total);
+    }
+
+    /**
+     * sweep the first length known values in ascending order with their
+     * class and weight, score every threshold on a class boundary by its
+     * gain ratio and keep the best one. total is the weight of every row,
+     * the missing values included
+     */
+    private void sweep(double[] values, int[] classes, double[] rowWeights, int length, double total) {
+        double[] left = new double[numClasses];
+        double[] right = new double[numClasses];
+        double[] bestLeft = new double[numClasses];
+        double known = 0;
+
+        for (int i = 0; i < length; ++i) {
+            right[classes[i]] += rowWeights[i];
+            known += rowWeights[i];
+        }
+
+        double unknown = total - known;
+        double knownEntropy = calculateEntropy(right);
+        double maxGainRatio = 0;
+        double leftTotal = 0;
+        int previousGroupClass = -1;
+        int start = 0;
+
+        while (start < length) {
+            double value = values[start];
+            int groupClass = classes[start];
+            int end = start;
+
+            // values too close for determineSubset to tell apart form one group
+            while (end + 1 < length && !isSeparable(values[end], values[end + 1])) {
+                ++end;
+
+                if (classes[end] != groupClass) {
+                    groupClass = MIXED_CLASSES;
+                }
+            }
+
+            // a threshold between two groups of one same class is never the best
+            if (start > 0 && (groupClass == MIXED_CLASSES || groupClass != previousGroupClass)
+                    && leavesEnough(leftTotal, known - leftTotal)) {
+                double ratio = scoreThreshold(left, right, leftTotal, known, unknown, knownEntropy);
+
+                if (Utils.gr(ratio, maxGainRatio)) {
+                    maxGainRatio = ratio;
+                    splitPoint = (values[start - 1] + value) / 2;
+                    System.arraycopy(left, 0, bestLeft, 0, numClasses);
+                }
+            }
+
+            for (int i = start; i <= end; ++i) {
+                left[classes[i]] += rowWeights[i];
+                right[classes[i]] -= rowWeights[i];
+                leftTotal += rowWeights[i];
+            }
+
+            previousGroupClass = groupClass;
+            start = end + 1;
+        }
+
+        finishNumeric(bestLeft, left, unknown);
+    }
+
+    /**
+     * return whether a split point halfway between two sorted values
+     * sends them to different subsets
+     */
+    static boolean isSeparable(double value, double nextValue) {
+        return Utils.gr((value + nextValue) / 2, value);
+    }
+
+    /**
+     * method to build a tree model on a binned numeric attribute, the
+     * per-bin class counts are swept once and every cut point on a class
+     * boundary is scored by its gain ratio
+     */
+    private void buildNumericFromHistogram(mySubset subset) {
+        numClasses = subset.numClasses();
+        numValues = 2;
+
+        double[] histogram = subset.histogram(splitAttributeIndex);
+        int numBins = histogram.length / numClasses;
+        double[] left = new double[numClasses];
+        double[] right = new double[numClasses];
+        double[] bestLeft = new double[numClasses];
+        double known = 0;
+        double unknown = 0;
+
+        for (int i = 0; i < subset.numRows(); ++i) {
+            unknown += subset.weight(i);
+        }
+
+        for (int k = 0; k < histogram.length; ++k) {
+            right[k % numClasses] += histogram[k];
+            known += histogram[k];
+        }
+
+        unknown -= known;
+
+        double knownEntropy = calculateEntropy(right);
+        double maxGainRatio = 0;
+        double leftTotal = 0;
+        int previousGroupClass = -1;
+        int previousBin = -1;
+
+        for (int bin = 0; bin < numBins; ++bin) {
+            int base = bin * numClasses;
+            int groupClass = -1;
+
+            for (int j = 0; j < numClasses; ++j) {
+                if (histogram[base + j] > 0) {
+                    groupClass = groupClass == -1 ? j : MIXED_CLASSES;
+                }
+            }
+
+            if (groupClass == -1) {
+                continue;
+            }
+
+            // a threshold between two bins of one same class is never the best
+            if (previousBin >= 0 && (groupClass == MIXED_CLASSES || groupClass != previousGroupClass)
+                    && leavesEnough(leftTotal, known - leftTotal)) {
+                double ratio = scoreThreshold(left, right, leftTotal, known, unknown, knownEntropy);
+
+                if (Utils.gr(ratio, maxGainRatio)) {
+                    maxGainRatio = ratio;
+                    splitPoint = subset.cutPoint(splitAttributeIndex, previousBin);
+                    System.arraycopy(left, 0, bestLeft, 0, numClasses);
+                }
+            }
+
+            for (int j = 0; j < numClasses; ++j) {
+                left[j] += histogram[base + j];
+                right[j] -= histogram[base + j];
+                leftTotal += histogram[base + j];
+            }
+
+            previousGroupClass = groupClass;
+            previousBin = bin;
+        }
+
+        finishNumeric(bestLeft, left, unknown);
+    }
+
+    /**
+     * return whether both sides of a threshold weigh at least minLeafWeight
+     */
+    private boolean leavesEnough(double leftTotal, double rightTotal) {
+        return minLeafWeight <= 0
+                || (Utils.grOrEq(leftTotal, minLeafWeight) && Utils.grOrEq(rightTotal, minLeafWeight));
+    }
+
+    /**
+     * return the gain ratio of a threshold with the given class weights
+     * on both sides, the gain is scaled down by the unknown weight
+     */
+    private static double scoreThreshold(double[] left, double[] right, double leftTotal,
+                                         double known, double unknown, double knownEntropy) {
+        double rightTotal = known - leftTotal;
+        double gain = myEntropy.infoGain(knownEntropy, left, leftTotal, right, rightTotal);
+
+        return ratioOf(gain * known / (known + unknown), myEntropy.splitInformation(leftTotal, rightTotal));
+    }
+
+    /**
+     * fill the distribution of a numeric split from the class weights left
+     * of the best threshold and of all known values
+     */
+    private void finishNumeric(double[] bestLeft, double[] all, double unknown) {
+        distribution = new double[numValues][numClasses];
+
+        for (int j = 0; j < numClasses; ++j) {
+            distribution[0][j] = bestLeft[j];
+            distribution[1][j] = all[j] - bestLeft[j];
+        }
+
+        calculateDistribution();
+
+        if (splitPoint == Double.MAX_VALUE) {
+            infoGain = 0;
+            gainRatio = 0;
+        } else {
+            calculateGainRatio(unknown);
+        }
+    }
+
+    /**
+     * calculate the class and value distribution and the weights
+     * of every subset from the distribution of the known values
+     */
+    private void calculateDistribution() {
+        classDistribution = new double[numClasses];
+        valueDistribution = new double[numValues];
+        double total = 0;
+
         for (int i = 0; i < numValues; ++i) {
             for (int j = 0; j < numClasses; ++j) {
                 classDistribution[j] += distribution[i][j];
@@ -168,59 +617,55 @@ public class myModel extends Classifier {
                 weights.add(valueDistribution[i] / total);
             }
         }
+    }
 
-        //info gain from splited attribute
-        infoGain = calculateEntropy(classDistribution);
+    /**
+     * calculate the info gain and gain ratio of the split, the gain
+     * is scaled down by the share of instances with a missing value
+     */
+    private void calculateGainRatio(double unknown) {
+        double total = 0;
 
-        //info gain every values in splited attribute
         for (int i = 0; i < numValues; ++i) {
-            infoGain -= (valueDistribution[i] / total) * calculateEntropy(distribution[i]);
+            total += valueDistribution[i];
         }
 
-        double splitInfo = 0;
-
-        //SplitInformation(S, A)
-        for (int i = 0; i < numValues; ++i) {
-            double ratio = valueDistribution[i] / total;
-
-            if (Utils.gr(ratio, 0)) {
-                splitInfo -= ratio * Utils.log2(ratio);
-            }
+        if (Utils.eq(total, 0) || !hasEnoughLeaves()) {
+            infoGain = 0;
+            gainRatio = 0;
+            return;
         }
 
-        gainRatio = Utils.eq(splitInfo, 0) ? infoGain : (infoGain / splitInfo);
+        //entropy of the class minus the entropy left in every value of the splited attribute
+        infoGain = myEntropy.infoGain(classDistribution, distribution, valueDistribution, total);
+        infoGain *= total / (total + unknown);
+
+        gainRatio = ratioOf(infoGain, myEntropy.splitInformation(valueDistribution, total));
     }
 
     /**
-     * method to choose splitting point to process numeric data
+     * return whether at least two subsets weigh minLeafWeight
      */
-    private double determineSplitPoint(Instances instances) {
-        instances.sort(splitAttributeIndex);
-
-        double lastValue = Double.MIN_VALUE;
-        double lastClass = -1;
-
-        for (int i = 0; i < instances.numInstances(); ++i) {
-            Instance instance = instances.instance(i);
+    private boolean hasEnoughLeaves() {
+        if (minLeafWeight <= 0) {
+            return true;
+        }
 
-            if (!instance.isMissing(splitAttributeIndex)) {
-                resolveMissingValue(instances);
+        int numEnough = 0;
+        for (double weight : valueDistribution) {
+            if (Utils.grOrEq(weight, minLeafWeight)) {
+                ++numEnough;
             }
-
-            double currentClass = instance.classValue();
-            double currentValue = instance.value(splitAttributeIndex);
-
-            if (!Utils.eq(currentClass, lastClass)) {
-                if (lastClass == -1) {
-                    lastClass = currentClass;
-                } else {
-                    return (currentValue + lastValue) / 2;
-                }
-            }
-            lastValue = currentValue;
         }
 
-        return Double.MAX_VALUE;
+        return numEnough >= 2;
+    }
+
+    /**
+     * return the gain ratio of an info gain and split information
+     */
+    private static double ratioOf(double infoGain, double splitInfo) {
+        return Utils.eq(splitInfo, 0) ? infoGain : (infoGain / splitInfo);
     }
 
     /**
@@ -237,52 +682,34 @@ public class myModel extends Classifier {
             return 0;
         }
 
-        double entropy = 0;
-
-        for (double value : values) {
-            double p = value / total;
-
-            if (Utils.gr(p, 0)) {
-                entropy -= p * Utils.log2(p);
-            }
-        }
-
-        return entropy;
+        return myEntropy.entropy(values, total);
     }
 
     /**
-     * split the instances to make a tree model
+     * split a view of the training data to make a tree model, the
+     * sorted orders of the view are kept in every subset
      */
-    public List<Instances> splitInstances(Instances instances) {
+    public List<mySubset> splitSubset(mySubset subset) {
         if (!built) {
             throw new IllegalStateException("Model has not built yet");
         }
 
-        List<Instances> result = new ArrayList<>();
-        int numInstances = instances.numInstances();
-
-        for (int i = 0; i < numValues; ++i) {
-            result.add(new Instances(instances, numInstances));
+        if (noSplit) {
+            return Collections.singletonList(subset);
         }
 
-        for (int i = 0; i < numInstances; ++i) {
-            Instance instance = instances.instance(i);
-            int subset = determineSubset(instance);
+        int[] target = new int[subset.numRows()];
+        double[] subsetWeights = new double[numValues];
 
-            if (subset == -1) {
-                for (int j = 0; j < numValues; ++j) {
-                    double weight = weights.get(i);
+        for (int i = 0; i < numValues; ++i) {
+            subsetWeights[i] = weights.get(i);
+        }
 
-                    if (Utils.gr(weight, 0)) {
-                        result.get(j).add(instance);
-                        result.get(j).lastInstance().setWeight(weight * instance.weight());
-                    }
-                }
-            } else {
-                result.get(subset).add(instance);
-            }
+        for (int i = 0; i < subset.numRows(); ++i) {
+            target[i] = determineSubset(subset.value(i, splitAttributeIndex), subset.attribute(splitAttributeIndex).isNominal());
         }
-        return result;
+
+        return Arrays.asList(subset.partition(target, subsetWeights));
     }
 
     /**
@@ -295,15 +722,38 @@ public class myModel extends Classifier {
 
         if (noSplit) {
             return 0;
-        } else if (instance.isMissing(splitAttributeIndex)) {
+        } else {
+            return determineSubset(instance.value(splitAttributeIndex), instance.attribute(splitAttributeIndex).isNominal());
+        }
+    }
+
+    /**
+     * categorize a value of the split attribute
+     */
+    private int determineSubset(double value, boolean isNominal) {
+        if (Instance.isMissingValue(value)) {
             return -1;
-        } else if (instance.attribute(splitAttributeIndex).isNominal()) {
-            return (int)instance.value(splitAttributeIndex);
+        } else if (isNominal) {
+            return (int)value;
         } else {
-            return Utils.gr(splitPoint, instance.value(splitAttributeIndex)) ? 0 : 1;
+            return Utils.gr(splitPoint, value) ? 0 : 1;
         }
     }
 
+    /**
+     * return the index of the split attribute, -1 when there is no split
+     */
+    public int getSplitAttributeIndex() {
+        return splitAttributeIndex;
+    }
+
+    /**
+     * return the split point of a numeric split
+     */
+    public double getSplitPoint() {
+        return splitPoint;
+    }
+
     /**
      * return the value of propability based on class value
      */
@@ -321,6 +771,25 @@ public class myModel extends Classifier {
         }
     }
 
+    /**
+     * add the probability of every class value, times weight, to result
+     */
+    public void addClassProbabilities(double weight, double[] result) {
+        if (!built) {
+            throw new IllegalStateException("Model has not built yet");
+        }
+
+        double total = getTotalDistribution();
+
+        if (Utils.eq(total, 0)) {
+            return;
+        }
+
+        for (int i = 0; i < numClasses; ++i) {
+            result[i] += weight * classDistribution[i] / total;
+        }
+    }
+
     /**
      * return the weight of the model
      */
@@ -343,6 +812,25 @@ public class myModel extends Classifier {
         return gainRatio;
     }
 
+    /**
+     * return the info gain of the model, scaled down by the share of
+     * instances with a missing value
+     */
+    public double getInfoGain() {
+        if (!built) {
+            throw new IllegalStateException("Model has not built yet");
+        }
+
+        return infoGain;
+    }
+
+    /**
+     * return whether the model splits the data
+     */
+    public boolean hasSplit() {
+        return !noSplit;
+    }
+
     /**
      * calculate the total distribution of every value
      */
@@ -388,57 +876,4 @@ public class myModel extends Classifier {
 
         return dominantClass;
     }
-
-    /**
-     * set the missing attribute with most common
-     * value attribute with the same class
-     */
-    public void resolveMissingValue(Instances instances) {
-        for (int i = 0; i < instances.numInstances(); ++i) {
-            Instance instance = instances.instance(i);
-
-            for (int j = 0; j < instance.numAttributes() - 1; ++j) {
-                if (instance.isMissing(j)) {
-                    instance.setValue(j, mostCommonTarget(instances, instance.classValue(), j));
-                }
-            }
-        }
-    }
-
-
-    /**
-     * return the value of most common value attribute
-     * with the same target
-     */
-    public double mostCommonTarget(Instances instances, double target, int indexMissing) {
-
-        int numValueAtt = instances.numDistinctValues(indexMissing); //numValues
-        int[] distributionAtt = new int[numValueAtt];
-
-        Enumeration enumInstance = instances.enumerateInstances();
-
-        for (int i = 0; i < numValueAtt; ++i) {
-            distributionAtt[i] = 0;
-        }
-
-        while (enumInstance.hasMoreElements()) {
-            Instance instance = (Instance) enumInstance.nextElement();
-
-            if (instance.classValue() == target && !instance.isMissing(indexMissing)) {
-                distributionAtt[(int) instance.value(indexMissing)]++;
-            }
-        }
-
-        int maxIdx = 0;
-        int max = 0;
-
-        for (int i = 0; i < numValueAtt; ++i) {
-            if (distributionAtt[i] > max) {
-                max = distributionAtt[i];
-                maxIdx = i;
-            }
-        }
-
-        return (double) maxIdx;
-    }
 }
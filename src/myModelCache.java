@@ -0,0 +1,404 @@
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Option;
+import weka.core.OptionHandler;
+import weka.core.Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of trained classifiers, keyed by the class and options of the
+ * classifier and a fingerprint of the training data. The fingerprint is
+ * a 128 bit hash of the header and of every value and weight, so equal
+ * data gives an equal key however it was loaded, and any changed value
+ * gives another one. Options that only change how the classifier runs,
+ * such as its number of threads, are left out of the key.
+ *
+ * The memory tier holds at most maxEntries classifiers and drops the
+ * least recently used one. The disk tier is optional: every classifier
+ * built is also written to the directory as a serialized file, the
+ * least recently used files are deleted once they take more than
+ * maxDiskBytes, and a classifier found on disk is moved back into memory.
+ *
+ * A cached classifier is shared by everyone who gets it: predict with
+ * it, but do not train it again.
+ */
+public class myModelCache {
+
+    private static final int FILE_MAGIC = 0x4D594D43;
+    private static final String FILE_SUFFIX = ".model";
+
+    private static final long PRIME_1 = 0x9E3779B97F4A7C15L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+
+    /**
+     * per classifier class, the options that change how fast it trains
+     * or predicts but never the model it builds
+     */
+    private static final Map<Class<?>, List<String>> EXECUTION_OPTIONS = new HashMap<>();
+
+    static {
+        EXECUTION_OPTIONS.put(myC45.class, Arrays.asList("P", "F", "C"));
+        EXECUTION_OPTIONS.put(myID3.class, Arrays.asList("P", "F", "C"));
+        EXECUTION_OPTIONS.put(myForest.class, Arrays.asList("P"));
+    }
+
+    private final int maxEntries;
+    private final File directory;
+    private final long maxDiskBytes;
+    private final Map<String, Classifier> memory;
+
+    private long hits = 0;
+    private long diskHits = 0;
+    private long misses = 0;
+
+    /**
+     * create a cache that keeps at most maxEntries classifiers in memory
+     */
+    public myModelCache(int maxEntries) {
+        this(maxEntries, null, 0);
+    }
+
+    /**
+     * create a cache that keeps at most maxEntries classifiers in memory
+     * and at most maxDiskBytes of them in the directory
+     */
+    public myModelCache(int maxEntries, File directory, long maxDiskBytes) {
+        this.maxEntries = maxEntries;
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memory = new LinkedHashMap<String, Classifier>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Classifier> eldest) {
+                return size() > myModelCache.this.maxEntries;
+            }
+        };
+
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            throw new IllegalArgumentException("Can not create cache directory " + directory);
+        }
+    }
+
+    /**
+     * return the classifier the template builds on the data, from the
+     * cache when it was built before, otherwise a copy of the template
+     * trained on the data. The template itself is never changed
+     */
+    public Classifier buildClassifier(Classifier template, Instances data) throws Exception {
+        String key = key(template, data);
+        Classifier cached = get(key);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        Classifier classifier = Classifier.makeCopy(template);
+        classifier.buildClassifier(data);
+        put(key, classifier);
+
+        return classifier;
+    }
+
+    /**
+     * return the cached classifier of a key, or null
+     */
+    private Classifier get(String key) {
+        synchronized (this) {
+            Classifier classifier = memory.get(key);
+
+            if (classifier != null) {
+                ++hits;
+                return classifier;
+            }
+        }
+
+        Classifier classifier = readFromDisk(key);
+
+        synchronized (this) {
+            if (classifier != null) {
+                ++diskHits;
+                memory.put(key, classifier);
+            } else {
+                ++misses;
+            }
+        }
+
+        return classifier;
+    }
+
+    private void put(String key, Classifier classifier) {
+        synchronized (this) {
+            memory.put(key, classifier);
+        }
+
+        writeToDisk(key, classifier);
+    }
+
+    /**
+     * drop every classifier from memory, the files on disk are kept
+     */
+    public synchronized void clear() {
+        memory.clear();
+    }
+
+    /**
+     * return the number of classifiers found in memory
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * return the number of classifiers found on disk
+     */
+    public synchronized long getDiskHits() {
+        return diskHits;
+    }
+
+    /**
+     * return the number of classifiers that had to be built
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * return the cache key of a classifier with its options on the data,
+     * without its execution options
+     */
+    public static String key(Classifier classifier, Instances data) {
+        String options = classifier instanceof OptionHandler ? Utils.joinOptions(modelOptions(classifier)) : "";
+
+        return classifier.getClass().getName() + " " + options + " " + fingerprint(data);
+    }
+
+    /**
+     * return the options of a classifier without its execution options
+     * and their arguments
+     */
+    private static String[] modelOptions(Classifier classifier) {
+        String[] options = classifier.getOptions();
+        List<String> skipped = EXECUTION_OPTIONS.get(classifier.getClass());
+
+        if (skipped == null) {
+            return options;
+        }
+
+        Map<String, Integer> numArguments = new HashMap<>();
+
+        for (Enumeration enu = classifier.listOptions(); enu.hasMoreElements(); ) {
+            Option option = (Option)enu.nextElement();
+            numArguments.put(option.name(), option.numArguments());
+        }
+
+        List<String> result = new ArrayList<>();
+
+        for (int i = 0; i < options.length; ++i) {
+            String name = options[i].startsWith("-") ? options[i].substring(1) : "";
+
+            if (skipped.contains(name)) {
+                i += numArguments.getOrDefault(name, 0);
+            } else {
+                result.add(options[i]);
+            }
+        }
+
+        return result.toArray(new String[0]);
+    }
+
+    /**
+     * return a 128 bit hash of the data in hex. It covers the attributes
+     * (names, types and nominal values), the class index and every
+     * non-zero value and the weight of every instance, in order. Dense
+     * and sparse instances with the same values hash the same
+     */
+    public static String fingerprint(Instances data) {
+        long[] hash = {PRIME_1, PRIME_2};
+
+        mix(hash, data.classIndex());
+        mix(hash, data.numAttributes());
+
+        for (int j = 0; j < data.numAttributes(); ++j) {
+            Attribute attribute = data.attribute(j);
+            mix(hash, attribute.type());
+            mix(hash, attribute.name());
+
+            for (int v = 0; attribute.isNominal() && v < attribute.numValues(); ++v) {
+                mix(hash, attribute.value(v));
+            }
+        }
+
+        for (int i = 0; i < data.numInstances(); ++i) {
+            Instance instance = data.instance(i);
+            mix(hash, Double.doubleToLongBits(instance.weight()));
+
+            for (int k = 0; k < instance.numValues(); ++k) {
+                double value = instance.valueSparse(k);
+
+                if (value != 0) {
+                    mix(hash, instance.index(k));
+                    mix(hash, Double.doubleToLongBits(value));
+                }
+            }
+
+            // end of the instance, so values can not shift between instances
+            mix(hash, -1);
+        }
+
+        return String.format("%016x%016x", finish(hash[0]), finish(hash[1]));
+    }
+
+    /**
+     * mix the length and every character of a text, so texts that only
+     * share their String.hashCode hash apart
+     */
+    private static void mix(long[] hash, String text) {
+        mix(hash, text.length());
+
+        for (int i = 0; i < text.length(); ++i) {
+            mix(hash, text.charAt(i));
+        }
+    }
+
+    private static void mix(long[] hash, long value) {
+        hash[0] = Long.rotateLeft(hash[0] ^ (value * PRIME_2), 31) * PRIME_1;
+        hash[1] = Long.rotateLeft(hash[1] ^ (value * PRIME_1), 27) * PRIME_2 + 0x52DCE729;
+    }
+
+    /**
+     * spread every bit over the whole hash (the finalizer of MurmurHash3)
+     */
+    private static long finish(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+    /**
+     * return the file of a key, named by a hash of the whole key
+     */
+    private File fileOf(String key) {
+        long[] hash = {PRIME_1, PRIME_2};
+
+        for (int i = 0; i < key.length(); ++i) {
+            mix(hash, key.charAt(i));
+        }
+
+        return new File(directory, String.format("%016x%016x", finish(hash[0]), finish(hash[1])) + FILE_SUFFIX);
+    }
+
+    /**
+     * read the classifier of a key from disk, or return null when it is
+     * not there or can not be read. The file is touched, it has been used
+     */
+    private Classifier readFromDisk(String key) {
+        if (directory == null) {
+            return null;
+        }
+
+        File file = fileOf(key);
+
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || !in.readUTF().equals(key)) {
+                return null;
+            }
+
+            Classifier classifier = (Classifier) new ObjectInputStream(in).readObject();
+            file.setLastModified(System.currentTimeMillis());
+
+            return classifier;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            // written by another version or damaged, it is built again
+            return null;
+        }
+    }
+
+    /**
+     * write the classifier of a key to disk, through a temporary file so
+     * a reader never sees half a file, then keep the disk tier in bounds
+     */
+    private void writeToDisk(String key, Classifier classifier) {
+        if (directory == null) {
+            return;
+        }
+
+        File file = fileOf(key);
+
+        try {
+            File temporary = File.createTempFile("write", ".tmp", directory);
+
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                    out.writeInt(FILE_MAGIC);
+                    out.writeUTF(key);
+
+                    ObjectOutputStream objects = new ObjectOutputStream(out);
+                    objects.writeObject(classifier);
+                    objects.flush();
+                }
+
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary.toPath());
+            }
+        } catch (IOException e) {
+            // the disk tier is only a cache, the classifier is still in memory
+            return;
+        }
+
+        evictFromDisk();
+    }
+
+    /**
+     * delete the least recently used files until the rest fits in maxDiskBytes
+     */
+    private synchronized void evictFromDisk() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+
+        if (files == null) {
+            return;
+        }
+
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+
+        for (int i = 0; i < files.length && total > maxDiskBytes; ++i) {
+            total -= files[i].length();
+            files[i].delete();
+        }
+    }
+}
@@ -1,156 +1,603 @@
 import weka.classifiers.Classifier;
+import weka.core.Attribute;
 import weka.core.Instance;
 import weka.core.Instances;
+import weka.core.Statistics;
 import weka.core.Utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * A node of the myC45 tree. Once built, a node only keeps its split and
+ * the weight of every class among its training rows, so pruning and
+ * printing need no training data and a finished tree holds none.
+ */
 public class myNode extends Classifier {
 
     private final List<myNode> children = new ArrayList<>();
     private myModel splitedModel;
-    private Instances trainingInstances;
+    private double[] classCounts;
     private boolean isLeaf = false;
 
-    private static final double ERROR_THRESHOLD = 0.1;
+    public static final double DEFAULT_ERROR_THRESHOLD = 0.1;
 
     @Override
     public void buildClassifier(Instances instances) {
-        trainingInstances = instances;
-        splitedModel = myModel.chooseFromInstances(instances);
-        List<Instances> splitInstances = splitedModel.splitInstances(instances);
+        buildClassifier(mySubset.presort(instances));
+    }
+
+    /**
+     * build the tree from a presorted view of the training data
+     */
+    public void buildClassifier(mySubset subset) {
+        buildClassifier(subset, myBuildContext.sequential());
+    }
+
+    /**
+     * build the tree from a presorted view of the training data. The
+     * attributes of every node are scored on the pool of the context,
+     * and children over the fork threshold are built as their own task
+     */
+    public void buildClassifier(mySubset subset, myBuildContext context) {
+        build(subset, context, 0);
+    }
+
+    /**
+     * build the subtree of a node at a depth, the root is depth 0
+     */
+    private void build(mySubset subset, myBuildContext context, int depth) {
+        classCounts = countClasses(subset);
+        splitedModel = chooseSplit(subset, context, depth);
+
+        long start = myMetrics.start();
+        List<mySubset> splitSubsets = splitedModel.splitSubset(subset);
+        subset.releaseSplitData();
+        myMetrics.recordPartitioning(start);
 
         children.clear();
+        isLeaf = splitSubsets.size() == 1;
+        myMetrics.recordNode(depth, isLeaf);
 
-        if (splitInstances.size() == 1) {
-            isLeaf = true;
-        } else {
-            for (Instances childInstances : splitInstances) {
+        if (!isLeaf) {
+            List<BuildSubtree> forked = new ArrayList<>();
+
+            for (mySubset childSubset : splitSubsets) {
                 myNode child = new myNode();
-                child.buildClassifier(childInstances);
                 children.add(child);
+
+                if (context.shouldFork(childSubset.numRows())) {
+                    BuildSubtree task = new BuildSubtree(child, childSubset, context, depth + 1);
+                    task.fork();
+                    forked.add(task);
+                } else {
+                    child.build(childSubset, context, depth + 1);
+                }
+            }
+
+            for (BuildSubtree task : forked) {
+                task.join();
+            }
+        }
+    }
+
+    /**
+     * return the best split of the node within the limits of the context,
+     * or a model without split. classCounts must be counted already
+     */
+    private myModel chooseSplit(mySubset subset, myBuildContext context, int depth) {
+        if (!context.canSplitAt(depth)) {
+            return myModel.createNoSplitModel(classCounts);
+        }
+
+        long start = myMetrics.start();
+        myModel model = myModel.chooseFromSubset(subset, context.getPool(), context.getNumRandomAttributes(),
+                context.getRandom(), context.getMinLeafWeight());
+        myMetrics.recordScoring(start);
+
+        return model;
+    }
+
+    /**
+     * build the tree best first from a presorted view of the training
+     * data. Of all leaves that can be split, the one whose split removes
+     * the most entropy (info gain times weight) is split next, until the
+     * tree has maxLeaves leaves or no leaf can be split. A split that
+     * would take the tree over maxLeaves is passed over. Only the
+     * attributes of a node are scored on the pool of the context
+     */
+    public void buildBestFirst(mySubset subset, myBuildContext context, int maxLeaves) {
+        PriorityQueue<Expansion> frontier = new PriorityQueue<>();
+        long numQueued = 0;
+        int numLeaves = 1;
+
+        Expansion root = startLeaf(subset, context, 0, numQueued++);
+        if (root != null) {
+            frontier.add(root);
+        }
+
+        while (!frontier.isEmpty() && numLeaves < maxLeaves) {
+            Expansion next = frontier.poll();
+            int numChildren = next.split.getWeights().size();
+
+            if (numLeaves + numChildren - 1 > maxLeaves) {
+                next.node.finishLeaf(next);
+                continue;
             }
+
+            long start = myMetrics.start();
+            List<mySubset> splitSubsets = next.split.splitSubset(next.subset);
+            next.subset.releaseSplitData();
+            myMetrics.recordPartitioning(start);
+
+            myNode node = next.node;
+            node.splitedModel = next.split;
+            node.isLeaf = false;
+            myMetrics.recordNode(next.depth, false);
+            numLeaves += numChildren - 1;
+
+            for (mySubset childSubset : splitSubsets) {
+                myNode child = new myNode();
+                node.children.add(child);
+
+                Expansion expansion = child.startLeaf(childSubset, context, next.depth + 1, numQueued++);
+                if (expansion != null) {
+                    frontier.add(expansion);
+                }
+            }
+        }
+
+        for (Expansion left : frontier) {
+            left.node.finishLeaf(left);
+        }
+    }
+
+    /**
+     * make the node a leaf of the rows of a view and return how it could
+     * be split, or null when it stays a leaf
+     */
+    private Expansion startLeaf(mySubset subset, myBuildContext context, int depth, long order) {
+        classCounts = countClasses(subset);
+        splitedModel = myModel.createNoSplitModel(classCounts);
+        children.clear();
+        isLeaf = true;
+
+        myModel split = chooseSplit(subset, context, depth);
+
+        if (!split.hasSplit()) {
+            subset.releaseSplitData();
+            myMetrics.recordNode(depth, true);
+            return null;
+        }
+
+        return new Expansion(this, subset, split, depth, split.getInfoGain() * Utils.sum(classCounts), order);
+    }
+
+    /**
+     * leave a node that could be split as a leaf
+     */
+    private void finishLeaf(Expansion expansion) {
+        expansion.subset.releaseSplitData();
+        myMetrics.recordNode(expansion.depth, true);
+    }
+
+    /**
+     * a leaf of a tree grown best first with the split it could get, the
+     * highest gain first and, of equal gains, the one queued first
+     */
+    private static class Expansion implements Comparable<Expansion> {
+
+        private final myNode node;
+        private final mySubset subset;
+        private final myModel split;
+        private final int depth;
+        private final double gain;
+        private final long order;
+
+        Expansion(myNode node, mySubset subset, myModel split, int depth, double gain, long order) {
+            this.node = node;
+            this.subset = subset;
+            this.split = split;
+            this.depth = depth;
+            this.gain = gain;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Expansion other) {
+            int byGain = Double.compare(other.gain, gain);
+
+            return byGain != 0 ? byGain : Long.compare(order, other.order);
+        }
+    }
+
+    /**
+     * sum the weight of every class over the rows of a view
+     */
+    private static double[] countClasses(mySubset subset) {
+        double[] counts = new double[subset.numClasses()];
+
+        for (int i = 0; i < subset.numRows(); ++i) {
+            counts[subset.classValue(i)] += subset.weight(i);
+        }
+
+        return counts;
+    }
+
+    /**
+     * task that builds one child subtree
+     */
+    private static class BuildSubtree extends RecursiveAction {
+
+        private final myNode node;
+        private final mySubset subset;
+        private final myBuildContext context;
+        private final int depth;
+
+        BuildSubtree(myNode node, mySubset subset, myBuildContext context, int depth) {
+            this.node = node;
+            this.subset = subset;
+            this.context = context;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            node.build(subset, context, depth);
         }
     }
 
     @Override
     public double classifyInstance(Instance instance) {
+        double[] distribution = distributionForInstance(instance);
         double maxProbability = -1;
         int maxIndex = -1;
 
-        for (int i = 0; i < instance.numClasses(); ++i) {
-            double probability = calculateProbability(i, instance, 1);
-
-            if (Utils.gr(probability, maxProbability)) {
+        for (int i = 0; i < distribution.length; ++i) {
+            if (Utils.gr(distribution[i], maxProbability)) {
                 maxIndex = i;
-                maxProbability = probability;
+                maxProbability = distribution[i];
             }
         }
 
         return (double)maxIndex;
     }
 
+    @Override
+    public double[] distributionForInstance(Instance instance) {
+        double[] result = new double[instance.numClasses()];
+        distributionForInstance(instance, result);
+
+        return result;
+    }
+
+    /**
+     * write the class distribution of an instance into result with one
+     * walk down the tree. When the split attribute is missing the
+     * instance goes down every branch with the weight of that branch
+     */
+    public void distributionForInstance(Instance instance, double[] result) {
+        Arrays.fill(result, 0);
+        myMetrics.recordPath(addDistribution(instance, 1, result));
+    }
+
     /**
-     * calculate the probability of an instanse
+     * add the weighted class probabilities of the leaves the instance
+     * reaches to result, and return the number of splits it went through
      */
-    private double calculateProbability(int classIdx, Instance instance, double weight) {
+    private int addDistribution(Instance instance, double weight, double[] result) {
         if (isLeaf) {
-            return weight * splitedModel.getClassProbability(classIdx);
+            splitedModel.addClassProbabilities(weight, result);
+            return 0;
+        }
+
+        int idx = splitedModel.determineSubset(instance);
+        int numSplits = 1;
+
+        if (idx < 0) {
+            List<Double> weights = splitedModel.getWeights();
+
+            for (int i = 0; i < weights.size(); ++i) {
+                double branchWeight = weights.get(i);
+
+                if (Utils.gr(branchWeight, 0)) {
+                    numSplits += children.get(i).addDistribution(instance, weight * branchWeight, result);
+                }
+            }
         } else {
-            int idx = splitedModel.determineSubset(instance);
+            numSplits += children.get(idx).addDistribution(instance, weight, result);
+        }
+
+        return numSplits;
+    }
+
+    /**
+     * write this subtree into the slot of a compiled tree
+     */
+    public void compileInto(myCompiledTree.Builder builder, int slot, Instances header) {
+        if (isLeaf) {
+            int numClasses = splitedModel.getNumClasses();
+            double[] distribution = new double[numClasses];
+            double maxProbability = -1;
+            int maxIndex = -1;
 
-            if (idx < 0) {
-                double prob = 0;
-                List<Double> weights = splitedModel.getWeights();
+            for (int i = 0; i < numClasses; ++i) {
+                distribution[i] = splitedModel.getClassProbability(i);
 
-                for (int i = 0; i < weights.size(); ++i) {
-                    prob += children.get(i).calculateProbability(classIdx, instance, weight * weights.get(i));
+                if (Utils.gr(distribution[i], maxProbability)) {
+                    maxIndex = i;
+                    maxProbability = distribution[i];
                 }
+            }
 
-                return prob;
+            builder.setLeaf(slot, distribution, maxIndex);
+        } else {
+            int attributeIndex = splitedModel.getSplitAttributeIndex();
+            int firstChild = builder.reserve(children.size());
 
+            if (header.attribute(attributeIndex).isNominal()) {
+                builder.setNominalSplit(slot, attributeIndex, firstChild);
             } else {
-                return children.get(idx).calculateProbability(classIdx, instance, weight);
+                builder.setNumericSplit(slot, attributeIndex, splitedModel.getSplitPoint(), firstChild);
+            }
+            builder.setBranchWeights(slot, splitedModel.getWeights());
+
+            for (int i = 0; i < children.size(); ++i) {
+                children.get(i).compileInto(builder, firstChild + i, header);
             }
         }
     }
 
-    @Override
-    public double[] distributionForInstance(Instance instance) {
-        int numClasses = instance.numClasses();
-        double[] result = new double[numClasses];
+    /**
+     * Post-prune the tree model, a subtree becomes a leaf when the error
+     * of the leaf is at most the summed error of its leaves plus
+     * DEFAULT_ERROR_THRESHOLD
+     */
+    public void prune() {
+        prune(0, DEFAULT_ERROR_THRESHOLD);
+    }
 
-        for (int i = 0; i < numClasses; ++i) {
-            result[i] = calculateProbability(i, instance, 1);
+    /**
+     * Post-prune the tree model with the pessimistic error estimate of
+     * C4.5, the upper confidence limit of the error of every leaf
+     */
+    public void prune(double confidence) {
+        if (!Utils.gr(confidence, 0)) {
+            throw new IllegalArgumentException("Confidence must be in (0, 0.5]");
         }
 
-        return result;
+        prune(confidence, DEFAULT_ERROR_THRESHOLD);
     }
 
     /**
-     * Post-prune the tree model
+     * Post-prune the tree model with the pessimistic error estimate at
+     * the confidence, or on the training error when the confidence is 0.
+     * A subtree becomes a leaf when the error of the leaf is at most the
+     * error of the subtree plus errorThreshold
      */
-    public void prune() {
-        if (isLeaf) {
-            // no need to prune anymore
+    public void prune(double confidence, double errorThreshold) {
+        if (Utils.sm(confidence, 0) || Utils.gr(confidence, 0.5)) {
+            throw new IllegalArgumentException("Confidence must be in [0, 0.5]");
+        }
+
+        long start = myMetrics.start();
+
+        if (Utils.gr(confidence, 0)) {
+            pruneByConfidence(confidence, errorThreshold);
         } else {
-            for (myNode child : children) {
-                child.prune();
-            }
+            pruneByThreshold(errorThreshold);
+        }
+
+        myMetrics.recordPruning(start);
+    }
+
+    /**
+     * prune the children first and return the summed error of the leaves
+     * left in the subtree, so every node is visited once
+     */
+    private double pruneByThreshold(double errorThreshold) {
+        if (isLeaf) {
+            return calculateErrorAsLeaf();
+        }
 
-            double errorAsLeaf = calculateErrorAsLeaf();
-            double error = calculateError();
+        double error = 0;
 
-            if (Utils.smOrEq(errorAsLeaf, error + ERROR_THRESHOLD)) {
-                splitedModel = myModel.createNoSplitModel(trainingInstances);
-                children.clear();
+        for (myNode child : children) {
+            error += child.pruneByThreshold(errorThreshold);
+        }
 
-                isLeaf = true;
-            }
+        double errorAsLeaf = calculateErrorAsLeaf();
+
+        if (Utils.smOrEq(errorAsLeaf, error + errorThreshold)) {
+            makeLeaf();
+            return errorAsLeaf;
         }
+
+        return error;
     }
 
     /**
-     * Calculate the error of the tree model recursively.
+     * prune the children first and return the estimated amount of
+     * errors of the subtree that is left
      */
-    private double calculateError() {
+    private double pruneByConfidence(double confidence, double errorThreshold) {
+        double errorsAsLeaf = estimateErrorsAsLeaf(confidence);
+
         if (isLeaf) {
-            return calculateErrorAsLeaf();
-        } else {
-            double error = 0;
+            return errorsAsLeaf;
+        }
 
-            for (myNode child : children) {
-                error += child.calculateError();
-            }
+        double errors = 0;
+
+        for (myNode child : children) {
+            errors += child.pruneByConfidence(confidence, errorThreshold);
+        }
 
-            return error;
+        if (Utils.smOrEq(errorsAsLeaf, errors + errorThreshold)) {
+            makeLeaf();
+            return errorsAsLeaf;
         }
+
+        return errors;
+    }
+
+    /**
+     * return a copy of the subtree that can be pruned without changing
+     * this one. Pruning never changes a split or the class counts, so
+     * the copy shares them
+     */
+    public myNode copy() {
+        myNode result = new myNode();
+        result.splitedModel = splitedModel;
+        result.classCounts = classCounts;
+        result.isLeaf = isLeaf;
+
+        for (myNode child : children) {
+            result.children.add(child.copy());
+        }
+
+        return result;
+    }
+
+    private void makeLeaf() {
+        splitedModel = myModel.createNoSplitModel(classCounts);
+        children.clear();
+
+        isLeaf = true;
     }
 
     /**
      * Calculate the error of a leaf node.
      */
     private double calculateErrorAsLeaf() {
-        myModel leafModel = myModel.createNoSplitModel(trainingInstances);
-        double totalDistribution = leafModel.getTotalDistribution();
+        double totalDistribution = Utils.sum(classCounts);
 
         if (Utils.eq(totalDistribution, 0)) {
             return 0;
         } else {
-            double incorrect = 0;
-            double dominantClass = leafModel.getDominantClass();
-            int numInstances = trainingInstances.numInstances();
+            double incorrect = totalDistribution - classCounts[Utils.maxIndex(classCounts)];
 
-            for (int i = 0; i < numInstances; ++i) {
-                Instance instance = trainingInstances.instance(i);
+            return incorrect / totalDistribution;
+        }
+    }
 
-                if (!Utils.eq(instance.classValue(), dominantClass)) {
-                    incorrect += 1;
-                }
+    /**
+     * return the misclassified weight of the node as a leaf plus the
+     * extra errors expected at the given confidence
+     */
+    private double estimateErrorsAsLeaf(double confidence) {
+        double total = Utils.sum(classCounts);
+        double incorrect = total - classCounts[Utils.maxIndex(classCounts)];
+
+        return incorrect + addErrors(total, incorrect, confidence);
+    }
+
+    /**
+     * return how many errors, on top of the observed ones, the upper
+     * confidence limit of the binomial error rate adds (as in C4.5)
+     */
+    static double addErrors(double total, double errors, double confidence) {
+        if (!Utils.gr(total, 0)) {
+            return 0;
+        }
+
+        // below one error the limit is interpolated between zero and one error
+        if (errors < 1) {
+            double base = total * (1 - Math.pow(confidence, 1 / total));
+
+            if (errors == 0) {
+                return base;
             }
 
-            return incorrect / totalDistribution;
+            return base + errors * (addErrors(total, 1, confidence) - base);
+        }
+
+        if (errors + 0.5 >= total) {
+            return Math.max(total - errors, 0);
+        }
+
+        double z = Statistics.normalInverse(1 - confidence);
+        double rate = (errors + 0.5) / total;
+        double limit = (rate + z * z / (2 * total)
+                + z * Math.sqrt(rate / total - rate * rate / total + z * z / (4 * total * total)))
+                / (1 + z * z / total);
+
+        return limit * total - errors;
+    }
+
+    /**
+     * return the total amount of leaves in the subtree
+     */
+    public int numLeaves() {
+        if (isLeaf) {
+            return 1;
+        }
+
+        int numLeaves = 0;
+        for (myNode child : children) {
+            numLeaves += child.numLeaves();
+        }
+
+        return numLeaves;
+    }
+
+    /**
+     * return the total amount of nodes in the subtree
+     */
+    public int numNodes() {
+        int numNodes = 1;
+        for (myNode child : children) {
+            numNodes += child.numNodes();
+        }
+
+        return numNodes;
+    }
+
+    /**
+     * return the subtree as text, a leaf shows its class with the
+     * training weight and, when not zero, the misclassified weight
+     */
+    public String toString(Instances header) {
+        StringBuilder text = new StringBuilder();
+        appendTo(text, header, 0);
+
+        return text.toString();
+    }
+
+    private void appendTo(StringBuilder text, Instances header, int level) {
+        if (isLeaf) {
+            double total = Utils.sum(classCounts);
+            int dominantClass = Utils.maxIndex(classCounts);
+            double incorrect = total - classCounts[dominantClass];
+
+            text.append(": ").append(header.classAttribute().value(dominantClass));
+            text.append(" (").append(Utils.roundDouble(total, 2));
+            if (Utils.gr(incorrect, 0)) {
+                text.append("/").append(Utils.roundDouble(incorrect, 2));
+            }
+            text.append(")");
+        } else {
+            Attribute attribute = header.attribute(splitedModel.getSplitAttributeIndex());
+
+            for (int i = 0; i < children.size(); ++i) {
+                text.append("\n");
+
+                for (int j = 0; j < level; ++j) {
+                    text.append("|  ");
+                }
+
+                text.append(attribute.name());
+                if (attribute.isNominal()) {
+                    text.append(" = ").append(attribute.value(i));
+                } else {
+                    text.append(i == 0 ? " < " : " >= ").append(Utils.doubleToString(splitedModel.getSplitPoint(), 6));
+                }
+
+                children.get(i).appendTo(text, header, level + 1);
+            }
         }
     }
 }
@@ -0,0 +1,694 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.NoSupportForMissingValuesException;
+import weka.core.SerializationHelper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embedded HTTP server, JDK only, that predicts with saved myC45 and
+ * myID3 models (myTreeFile or Java serialization).
+ *
+ *   POST /predict/name  one row per line, the comma separated attribute
+ *                       values in the order of the training header. The
+ *                       class may be left out or be ?. The answer has one
+ *                       line per row: the predicted class and the
+ *                       probability of every class
+ *   GET  /models        the hosted models, one per line
+ *
+ * Requests for one model that arrive within maxDelay of each other are
+ * predicted together as one batch of at most maxBatchRows rows. Every
+ * model file is checked for changes once a second and read again. A
+ * request is always predicted by the model its rows were parsed for, so
+ * a reload drops no request, and a file that can not be read (yet) keeps
+ * the old model. Replace a model file by renaming a new file over it.
+ */
+public class myPredictionServer {
+
+    public static final int DEFAULT_MAX_BATCH_ROWS = 1024;
+    public static final long DEFAULT_MAX_DELAY_MICROS = 500;
+
+    private static final long RELOAD_INTERVAL_MILLIS = 1000;
+
+    static {
+        // without it small answers wait for the delayed ACK of the client, about 40 ms each
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService reloader;
+    private final Map<String, HostedModel> models = new ConcurrentHashMap<>();
+    private final int maxBatchRows;
+    private final long maxDelayNanos;
+
+    /**
+     * create a server on the port, 0 picks a free one. Requests are read
+     * and answered on numThreads threads
+     */
+    public myPredictionServer(int port, int numThreads, int maxBatchRows, long maxDelayMicros) throws IOException {
+        this.maxBatchRows = maxBatchRows;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/predict/", this::handlePredict);
+        server.createContext("/models", this::handleModels);
+
+        handlers = Executors.newFixedThreadPool(numThreads);
+        server.setExecutor(handlers);
+
+        reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "model-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * host the model saved in a file under a name, replacing the model
+     * hosted under that name before
+     */
+    public void addModel(String name, String fileName) throws IOException {
+        HostedModel model = new HostedModel(name, new File(fileName));
+        HostedModel previous = models.put(name, model);
+
+        if (previous != null) {
+            previous.stop();
+        }
+    }
+
+    public void start() {
+        reloader.scheduleWithFixedDelay(this::checkForUpdates, RELOAD_INTERVAL_MILLIS, RELOAD_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+        server.start();
+    }
+
+    /**
+     * stop answering requests and stop the batching threads
+     */
+    public void stop() {
+        server.stop(0);
+        reloader.shutdownNow();
+        handlers.shutdownNow();
+
+        for (HostedModel model : models.values()) {
+            model.stop();
+        }
+    }
+
+    /**
+     * return the port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * read every model file that changed since it was read
+     */
+    private void checkForUpdates() {
+        for (HostedModel model : models.values()) {
+            model.reloadIfChanged();
+        }
+    }
+
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "Use POST\n");
+                return;
+            }
+
+            String name = exchange.getRequestURI().getPath().substring("/predict/".length());
+            HostedModel model = models.get(name);
+
+            if (model == null) {
+                send(exchange, 404, "Unknown model " + name + "\n");
+                return;
+            }
+
+            String body = readBody(exchange.getRequestBody());
+            LoadedModel loaded;
+            Job job;
+
+            // a model replaced by addModel meanwhile is stopped, the rows go to the one that replaced it
+            while (true) {
+                loaded = model.current;
+
+                try {
+                    job = new Job(loaded, loaded.parseRows(body));
+                } catch (IllegalArgumentException e) {
+                    send(exchange, 400, e.getMessage() + "\n");
+                    return;
+                }
+
+                if (model.submit(job)) {
+                    break;
+                }
+
+                HostedModel replacement = models.get(name);
+
+                // stopped without a replacement, the whole server is stopping
+                if (replacement == model) {
+                    send(exchange, 503, "Server is stopping\n");
+                    return;
+                }
+                model = replacement;
+            }
+
+            try {
+                send(exchange, 200, loaded.format(job.result.get()));
+            } catch (ExecutionException e) {
+                send(exchange, 500, e.getCause() + "\n");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                send(exchange, 503, "Server is stopping\n");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleModels(HttpExchange exchange) throws IOException {
+        try {
+            StringBuilder result = new StringBuilder();
+
+            for (HostedModel model : models.values()) {
+                result.append(model.name).append('\t').append(model.file).append('\t')
+                        .append(model.current.classifier.getClass().getName()).append('\n');
+            }
+
+            send(exchange, 200, result.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String readBody(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * read a myC45 or myID3 from a myTreeFile or a serialized model file
+     */
+    static Classifier readModel(File file) throws Exception {
+        int magic;
+
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            magic = in.readInt();
+        }
+
+        Classifier classifier = magic == myTreeFile.MAGIC
+                ? myTreeFile.read(file.getPath())
+                : (Classifier) SerializationHelper.read(file.getPath());
+
+        if (!(classifier instanceof myC45) && !(classifier instanceof myID3)) {
+            throw new IOException("Only myC45 and myID3 can be hosted, not " + classifier.getClass().getName());
+        }
+
+        return classifier;
+    }
+
+    /**
+     * a model as read from its file, with the header its rows are parsed by
+     * and its tree compiled once for every batch
+     */
+    private static class LoadedModel {
+
+        final Classifier classifier;
+        final Instances header;
+        final myCompiledTree tree;
+        final boolean spreadMissingValues;
+
+        LoadedModel(Classifier classifier) {
+            this.classifier = classifier;
+
+            if (classifier instanceof myC45) {
+                myC45 c45 = (myC45) classifier;
+                this.header = c45.getHeader();
+                this.tree = c45.compile();
+                this.spreadMissingValues = c45.getSpreadMissingValues();
+            } else {
+                myID3 id3 = (myID3) classifier;
+                this.header = id3.getHeader();
+                this.tree = id3.compile();
+                this.spreadMissingValues = false;
+            }
+        }
+
+        /**
+         * return the class distribution of every row, as distributionsForRows
+         * of the model would
+         */
+        double[][] predict(double[][] rows) throws Exception {
+            long start = myMetrics.start();
+            double[][] result = new double[rows.length][tree.getNumClasses()];
+
+            for (int i = 0; i < rows.length; ++i) {
+                if (!hasMissingValue(rows[i])) {
+                    tree.distributionForRow(rows[i], result[i]);
+                } else if (classifier instanceof myID3) {
+                    throw new NoSupportForMissingValuesException("Id3: no missing values, please.");
+                } else if (spreadMissingValues) {
+                    Instance instance = new Instance(1, rows[i]);
+                    instance.setDataset(header);
+                    tree.spreadDistributionForInstance(instance, result[i]);
+                } else {
+                    tree.distributionForRow(rows[i], result[i]);
+                }
+            }
+
+            myMetrics.recordBatch(start, rows.length);
+
+            return result;
+        }
+
+        /**
+         * return whether a row has a missing value other than the class
+         */
+        private boolean hasMissingValue(double[] row) {
+            for (int j = 0; j < row.length; ++j) {
+                if (j != header.classIndex() && Instance.isMissingValue(row[j])) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        /**
+         * parse one row per non-empty line, NaN is a missing value and
+         * the class is always missing
+         */
+        double[][] parseRows(String body) {
+            List<double[]> rows = new ArrayList<>();
+            int lineNumber = 0;
+
+            for (String line : body.split("\r?\n")) {
+                ++lineNumber;
+
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    rows.add(parseRow(line));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+
+            return rows.toArray(new double[0][]);
+        }
+
+        private double[] parseRow(String line) {
+            List<String> fields = splitFields(line);
+            int numAttributes = header.numAttributes();
+            boolean hasClass = fields.size() == numAttributes;
+
+            if (!hasClass && fields.size() != numAttributes - 1) {
+                throw new IllegalArgumentException("Expected " + (numAttributes - 1) + " or " + numAttributes
+                        + " values, got " + fields.size());
+            }
+
+            double[] row = new double[numAttributes];
+            int field = 0;
+
+            for (int j = 0; j < numAttributes; ++j) {
+                if (j == header.classIndex()) {
+                    row[j] = Double.NaN;
+                    field += hasClass ? 1 : 0;
+                    continue;
+                }
+
+                String value = fields.get(field++);
+                Attribute attribute = header.attribute(j);
+
+                if (value.equals("?")) {
+                    row[j] = Double.NaN;
+                } else if (attribute.isNominal()) {
+                    int index = attribute.indexOfValue(value);
+
+                    if (index < 0) {
+                        throw new IllegalArgumentException("Unknown value " + value + " of " + attribute.name());
+                    }
+                    row[j] = index;
+                } else if (attribute.isNumeric()) {
+                    try {
+                        row[j] = Double.parseDouble(value);
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Not a number for " + attribute.name() + ": " + value);
+                    }
+                } else {
+                    throw new IllegalArgumentException("Attribute " + attribute.name() + " can not be predicted on");
+                }
+            }
+
+            return row;
+        }
+
+        /**
+         * split a line at the commas outside of '...' or "...", and
+         * unquote and trim every field
+         */
+        private static List<String> splitFields(String line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            char quote = 0;
+            boolean quoted = false;
+
+            for (int i = 0; i < line.length(); ++i) {
+                char c = line.charAt(i);
+
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    } else {
+                        field.append(c);
+                    }
+                } else if ((c == '\'' || c == '"') && field.toString().trim().isEmpty()) {
+                    quote = c;
+                    quoted = true;
+                    field.setLength(0);
+                } else if (c == ',') {
+                    fields.add(quoted ? field.toString() : field.toString().trim());
+                    field.setLength(0);
+                    quoted = false;
+                } else if (!quoted) {
+                    field.append(c);
+                }
+            }
+
+            fields.add(quoted ? field.toString() : field.toString().trim());
+
+            return fields;
+        }
+
+        /**
+         * one line per row: the predicted class, then the probability of
+         * every class
+         */
+        String format(double[][] distributions) {
+            StringBuilder result = new StringBuilder();
+
+            for (double[] distribution : distributions) {
+                int predicted = 0;
+
+                for (int k = 1; k < distribution.length; ++k) {
+                    if (distribution[k] > distribution[predicted]) {
+                        predicted = k;
+                    }
+                }
+
+                result.append(header.classAttribute().value(predicted));
+
+                for (double probability : distribution) {
+                    result.append(',').append(probability);
+                }
+                result.append('\n');
+            }
+
+            return result.toString();
+        }
+    }
+
+    /**
+     * the rows of one request and the model they were parsed for
+     */
+    private static class Job {
+
+        final LoadedModel model;
+        final double[][] rows;
+        final CompletableFuture<double[][]> result = new CompletableFuture<>();
+
+        Job(LoadedModel model, double[][] rows) {
+            this.model = model;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * a model file under a name, with the thread that predicts its batches
+     */
+    private class HostedModel {
+
+        final String name;
+        final File file;
+        final BlockingQueue<Job> queue = new LinkedBlockingQueue<>();
+        final Thread batcher;
+
+        volatile LoadedModel current;
+        volatile boolean stopped = false;
+        private long lastModified;
+        private long length;
+
+        HostedModel(String name, File file) throws IOException {
+            this.name = name;
+            this.file = file;
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+
+            try {
+                this.current = new LoadedModel(readModel(file));
+            } catch (Exception e) {
+                throw new IOException("Can not read model " + file + ": " + e.getMessage(), e);
+            }
+
+            batcher = new Thread(this::predictBatches, "batcher-" + name);
+            batcher.setDaemon(true);
+            batcher.start();
+        }
+
+        /**
+         * stop the batching thread, it still answers the requests queued
+         * before, each with the model it was parsed for
+         */
+        void stop() {
+            stopped = true;
+            batcher.interrupt();
+        }
+
+        /**
+         * queue a job, return false when the model was stopped and the job
+         * is not queued
+         */
+        boolean submit(Job job) {
+            queue.add(job);
+
+            // added after the batcher drained the queue for the last time
+            return !(stopped && queue.remove(job));
+        }
+
+        /**
+         * read the file again when its time or size changed, a file that
+         * fails to read is tried again at the next check
+         */
+        void reloadIfChanged() {
+            long modified = file.lastModified();
+            long size = file.length();
+
+            if (modified == lastModified && size == length) {
+                return;
+            }
+
+            try {
+                current = new LoadedModel(readModel(file));
+                lastModified = modified;
+                length = size;
+            } catch (Exception e) {
+                // half written or replaced by something else, keep the old model
+            }
+        }
+
+        /**
+         * take the first waiting request, add the ones that come in within
+         * maxDelay up to maxBatchRows rows, and predict them together
+         */
+        private void predictBatches() {
+            List<Job> batch = new ArrayList<>();
+
+            try {
+                while (!stopped) {
+                    Job first = queue.take();
+                    batch.add(first);
+
+                    int numRows = first.rows.length;
+                    long deadline = System.nanoTime() + maxDelayNanos;
+
+                    while (numRows < maxBatchRows) {
+                        Job next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                        numRows += next.rows.length;
+                    }
+
+                    predict(batch, numRows);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                // stopped while waiting for a request
+            }
+
+            queue.drainTo(batch);
+
+            for (Job job : batch) {
+                predictAlone(job);
+            }
+        }
+
+        /**
+         * predict the rows of the jobs of one model in one call, the jobs
+         * parsed for an older model go alone
+         */
+        private void predict(List<Job> batch, int numRows) {
+            LoadedModel model = batch.get(0).model;
+            double[][] rows = new double[numRows][];
+            int filled = 0;
+
+            for (Job job : batch) {
+                if (job.model != model) {
+                    predictAlone(job);
+                    continue;
+                }
+
+                System.arraycopy(job.rows, 0, rows, filled, job.rows.length);
+                filled += job.rows.length;
+            }
+
+            double[][] distributions;
+
+            try {
+                distributions = model.predict(filled == numRows ? rows : Arrays.copyOf(rows, filled));
+            } catch (Exception e) {
+                // one bad request fails only itself
+                for (Job job : batch) {
+                    if (job.model == model) {
+                        predictAlone(job);
+                    }
+                }
+                return;
+            }
+
+            int offset = 0;
+
+            for (Job job : batch) {
+                if (job.model == model) {
+                    double[][] result = new double[job.rows.length][];
+                    System.arraycopy(distributions, offset, result, 0, result.length);
+                    offset += result.length;
+                    job.result.complete(result);
+                }
+            }
+        }
+
+        private void predictAlone(Job job) {
+            try {
+                job.result.complete(job.model.predict(job.rows));
+            } catch (Exception e) {
+                job.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * java myPredictionServer [-p port] [-t threads] [-b max batch rows]
+     * [-d max delay in microseconds] [-m] name=model file ..., -m
+     * registers the JMX metrics of myMetrics
+     */
+    public static void main(String[] args) throws Exception {
+        int port = 8080;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        int maxBatchRows = DEFAULT_MAX_BATCH_ROWS;
+        long maxDelayMicros = DEFAULT_MAX_DELAY_MICROS;
+        List<String[]> modelFiles = new ArrayList<>();
+
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+                case "-p":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-t":
+                    numThreads = Integer.parseInt(args[++i]);
+                    break;
+                case "-b":
+                    maxBatchRows = Integer.parseInt(args[++i]);
+                    break;
+                case "-d":
+                    maxDelayMicros = Long.parseLong(args[++i]);
+                    break;
+                case "-m":
+                    myMetrics.enable();
+                    break;
+                default:
+                    int split = args[i].indexOf('=');
+                    if (split <= 0) {
+                        throw new IllegalArgumentException("Expected name=model file, got " + args[i]);
+                    }
+                    modelFiles.add(new String[] {args[i].substring(0, split), args[i].substring(split + 1)});
+            }
+        }
+
+        if (modelFiles.isEmpty()) {
+            System.err.println("Usage: java myPredictionServer [-p port] [-t threads] [-b max batch rows]"
+                    + " [-d max delay in microseconds] [-m] name=model file ...");
+            System.exit(1);
+        }
+
+        myPredictionServer server = new myPredictionServer(port, numThreads, maxBatchRows, maxDelayMicros);
+
+        for (String[] model : modelFiles) {
+            server.addModel(model[0], model[1]);
+        }
+
+        server.start();
+        System.out.println("Listening on port " + server.getPort());
+    }
+}
@@ -0,0 +1,676 @@
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntPredicate;
+
+/**
+ * A view over the training data that reaches a tree node.
+ * The values are kept in a shared myColumnStore, and the node only owns
+ * the row ids, their weights and the sorted order of every numeric
+ * attribute, so a split never has to sort or copy instances again.
+ * In histogram mode the sorted orders are replaced by per-bin class
+ * counts of every numeric attribute (see myBinning). On a sparse store
+ * every attribute keeps only the positions of its non-zero and of its
+ * missing values, and the weight of the zeros follows from the class
+ * weights of the whole view.
+ */
+public class mySubset implements Serializable {
+
+    private final myColumnStore store;
+
+    private final int[] rows;
+    private final double[] weights;
+
+    // positions into rows, ascending by value, missing values left out
+    // (sparse: non-zero values of every attribute only, nominal ones in row order)
+    private int[][] sortedPositions;
+
+    // sparse only, positions into rows with a missing value
+    private int[][] missingPositions;
+
+    // sparse only, weight of every class over all rows
+    private final double[] classWeights;
+
+    // histogram mode only, [attribute][bin * numClasses + class] weight
+    private final myBinning binning;
+    private double[][] histograms;
+
+    private mySubset(myColumnStore store, int[] rows, double[] weights, int[][] sortedPositions,
+                     int[][] missingPositions) {
+        this(store, rows, weights, sortedPositions, missingPositions, null, null);
+    }
+
+    private mySubset(myColumnStore store, int[] rows, double[] weights, int[][] sortedPositions,
+                     int[][] missingPositions, myBinning binning, double[][] histograms) {
+        this.store = store;
+        this.rows = rows;
+        this.weights = weights;
+        this.sortedPositions = sortedPositions;
+        this.missingPositions = missingPositions;
+        this.classWeights = missingPositions == null ? null : countClassWeights();
+        this.binning = binning;
+        this.histograms = histograms;
+    }
+
+    /**
+     * copy the instances into columns and sort every numeric attribute
+     * once, instances with missing class are left out
+     */
+    public static mySubset presort(Instances instances) {
+        return presort(myColumnStore.create(instances));
+    }
+
+    /**
+     * sort every numeric attribute of a column store once, rows with
+     * missing class are left out. A sparse store gets a sparse view
+     */
+    public static mySubset presort(myColumnStore store) {
+        return store.isSparse() ? presortSparse(store) : presortDense(store);
+    }
+
+    /**
+     * sort every numeric attribute over all rows with a known class
+     */
+    private static mySubset presortDense(myColumnStore store) {
+        int numAttributes = store.numAttributes();
+        int[] rows = rowsWithClass(store);
+        double[] weights = weightsOf(store, rows);
+
+        int[][] sortedPositions = new int[numAttributes][];
+
+        for (int j = 0; j < numAttributes; ++j) {
+            if (j != store.classIndex() && store.attribute(j).isNumeric()) {
+                sortedPositions[j] = sortPositions(store, j, rows);
+            }
+        }
+
+        return new mySubset(store, rows, weights, sortedPositions, null);
+    }
+
+    /**
+     * collect the non-zero and the missing positions of every attribute
+     * from the stored values of the rows with a known class, and sort
+     * the numeric ones by value
+     */
+    private static mySubset presortSparse(myColumnStore store) {
+        int numAttributes = store.numAttributes();
+        int[] rows = rowsWithClass(store);
+        double[] weights = weightsOf(store, rows);
+
+        int[] numNonZero = new int[numAttributes];
+        int[] numMissing = new int[numAttributes];
+
+        for (int row : rows) {
+            for (int a : store.storedAttributes(row)) {
+                double value = store.value(row, a);
+
+                if (Instance.isMissingValue(value)) {
+                    ++numMissing[a];
+                } else if (value != 0) {
+                    ++numNonZero[a];
+                }
+            }
+        }
+
+        int[][] sortedPositions = new int[numAttributes][];
+        int[][] missingPositions = new int[numAttributes][];
+
+        for (int j = 0; j < numAttributes; ++j) {
+            if (j != store.classIndex() && (store.attribute(j).isNominal() || store.attribute(j).isNumeric())) {
+                sortedPositions[j] = new int[numNonZero[j]];
+                missingPositions[j] = new int[numMissing[j]];
+                numNonZero[j] = 0;
+                numMissing[j] = 0;
+            }
+        }
+
+        for (int i = 0; i < rows.length; ++i) {
+            for (int a : store.storedAttributes(rows[i])) {
+                if (sortedPositions[a] == null) {
+                    continue;
+                }
+
+                double value = store.value(rows[i], a);
+
+                if (Instance.isMissingValue(value)) {
+                    missingPositions[a][numMissing[a]++] = i;
+                } else if (value != 0) {
+                    sortedPositions[a][numNonZero[a]++] = i;
+                }
+            }
+        }
+
+        for (int j = 0; j < numAttributes; ++j) {
+            if (sortedPositions[j] != null && store.attribute(j).isNumeric()) {
+                sortedPositions[j] = sortByValue(store, j, rows, sortedPositions[j]);
+            }
+        }
+
+        return new mySubset(store, rows, weights, sortedPositions, missingPositions);
+    }
+
+    /**
+     * return the rows of the store with a known class
+     */
+    private static int[] rowsWithClass(myColumnStore store) {
+        int numInstances = store.numRows();
+
+        int[] rows = new int[numInstances];
+        int numRows = 0;
+
+        for (int i = 0; i < numInstances; ++i) {
+            if (store.classCode(i) != myColumnStore.MISSING_CODE) {
+                rows[numRows++] = i;
+            }
+        }
+
+        return Arrays.copyOf(rows, numRows);
+    }
+
+    /**
+     * return the weights of the given rows of the store
+     */
+    private static double[] weightsOf(myColumnStore store, int[] rows) {
+        double[] weights = new double[rows.length];
+
+        for (int i = 0; i < rows.length; ++i) {
+            weights[i] = store.weight(rows[i]);
+        }
+
+        return weights;
+    }
+
+    /**
+     * sum the weight of every class over all rows of the view
+     */
+    private double[] countClassWeights() {
+        double[] result = new double[store.numClasses()];
+
+        for (int i = 0; i < rows.length; ++i) {
+            result[store.classCode(rows[i])] += weights[i];
+        }
+
+        return result;
+    }
+
+    /**
+     * bin every numeric attribute of a column store into at most numBins
+     * quantile bins and count the classes per bin, rows with missing
+     * class are left out. The sorted orders are only used for binning
+     */
+    public static mySubset binned(myColumnStore store, int numBins) {
+        mySubset sorted = presortDense(store);
+        myBinning binning = myBinning.create(store, sorted.rows, sorted.sortedPositions, numBins);
+        mySubset result = new mySubset(store, sorted.rows, sorted.weights, null, null, binning, null);
+        result.ensureHistograms();
+
+        return result;
+    }
+
+    /**
+     * count the weight of every class per bin of every binned attribute
+     */
+    private double[][] countHistograms() {
+        int numClasses = store.numClasses();
+        double[][] result = new double[store.numAttributes()][];
+
+        for (int a = 0; a < result.length; ++a) {
+            if (a == store.classIndex() || !binning.isBinned(a)) {
+                continue;
+            }
+
+            double[] histogram = new double[binning.numBins(a) * numClasses];
+
+            for (int i = 0; i < rows.length; ++i) {
+                int bin = binning.code(rows[i], a);
+
+                if (bin != myBinning.MISSING_CODE) {
+                    histogram[bin * numClasses + store.classCode(rows[i])] += weights[i];
+                }
+            }
+
+            result[a] = histogram;
+        }
+
+        return result;
+    }
+
+    /**
+     * count the histograms of this subset, unless it already has them
+     * from its parent. Must be called before histogram is used
+     */
+    public void ensureHistograms() {
+        if (binning != null && histograms == null) {
+            histograms = countHistograms();
+        }
+    }
+
+    /**
+     * sort the positions of the known values of a column
+     */
+    private static int[] sortPositions(myColumnStore store, int attributeIndex, int[] rows) {
+        int numKnown = 0;
+        int[] known = new int[rows.length];
+
+        for (int i = 0; i < rows.length; ++i) {
+            if (!Instance.isMissingValue(store.value(rows[i], attributeIndex))) {
+                known[numKnown++] = i;
+            }
+        }
+
+        return sortByValue(store, attributeIndex, rows, Arrays.copyOf(known, numKnown));
+    }
+
+    /**
+     * return the positions sorted by their known value of a column,
+     * equal values keep their order
+     */
+    private static int[] sortByValue(myColumnStore store, int attributeIndex, int[] rows, int[] positions) {
+        int length = positions.length;
+        double[] values = new double[length];
+
+        for (int i = 0; i < length; ++i) {
+            values[i] = store.value(rows[positions[i]], attributeIndex);
+        }
+
+        Integer[] order = new Integer[length];
+        for (int i = 0; i < length; ++i) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+
+        int[] result = new int[length];
+        for (int i = 0; i < length; ++i) {
+            result[i] = positions[order[i]];
+        }
+
+        return result;
+    }
+
+    /**
+     * partition the view into one view per subset. target holds the subset
+     * of every position or -1 when the row goes to every subset, in which
+     * case its weight is scaled by subsetWeights
+     */
+    public mySubset[] partition(int[] target, double[] subsetWeights) {
+        int numSubsets = subsetWeights.length;
+        int numRows = rows.length;
+
+        int numShared = 0;
+        int[] subsetSizes = new int[numSubsets];
+        int[] position = new int[numRows];
+
+        for (int i = 0; i < numRows; ++i) {
+            if (target[i] < 0) {
+                position[i] = numShared++;
+            } else {
+                position[i] = subsetSizes[target[i]]++;
+            }
+        }
+
+        // rows that go everywhere are put in front of every subset that takes them
+        int[] offset = new int[numSubsets];
+        int[][] subsetRows = new int[numSubsets][];
+        double[][] subsetRowWeights = new double[numSubsets][];
+
+        for (int j = 0; j < numSubsets; ++j) {
+            offset[j] = subsetWeights[j] > 0 ? numShared : 0;
+            subsetRows[j] = new int[offset[j] + subsetSizes[j]];
+            subsetRowWeights[j] = new double[offset[j] + subsetSizes[j]];
+        }
+
+        for (int i = 0; i < numRows; ++i) {
+            if (target[i] < 0) {
+                for (int j = 0; j < numSubsets; ++j) {
+                    if (offset[j] > 0) {
+                        subsetRows[j][position[i]] = rows[i];
+                        subsetRowWeights[j][position[i]] = weights[i] * subsetWeights[j];
+                    }
+                }
+            } else {
+                int j = target[i];
+                subsetRows[j][offset[j] + position[i]] = rows[i];
+                subsetRowWeights[j][offset[j] + position[i]] = weights[i];
+            }
+        }
+
+        if (binning != null) {
+            return partitionBinned(numShared, subsetRows, subsetRowWeights);
+        }
+
+        int[][][] subsetSorted = filterPositions(sortedPositions, target, position, offset);
+        int[][][] subsetMissing = missingPositions == null ? null : filterPositions(missingPositions, target, position, offset);
+        mySubset[] result = new mySubset[numSubsets];
+
+        for (int j = 0; j < numSubsets; ++j) {
+            result[j] = new mySubset(store, subsetRows[j], subsetRowWeights[j], subsetSorted[j],
+                    subsetMissing == null ? null : subsetMissing[j]);
+        }
+
+        return result;
+    }
+
+    /**
+     * filter lists of positions through a partition into one set of
+     * lists per subset, this keeps them in order. Every list is counted
+     * before it is filled, so a subset only gets as much room as it takes
+     */
+    private static int[][][] filterPositions(int[][] lists, int[] target, int[] position, int[] offset) {
+        int numSubsets = offset.length;
+        int[][][] result = new int[numSubsets][lists.length][];
+        int[] fill = new int[numSubsets];
+
+        for (int a = 0; a < lists.length; ++a) {
+            int[] list = lists[a];
+
+            if (list == null) {
+                continue;
+            }
+
+            Arrays.fill(fill, 0);
+
+            for (int p : list) {
+                if (target[p] < 0) {
+                    for (int j = 0; j < numSubsets; ++j) {
+                        if (offset[j] > 0) {
+                            ++fill[j];
+                        }
+                    }
+                } else {
+                    ++fill[target[p]];
+                }
+            }
+
+            for (int j = 0; j < numSubsets; ++j) {
+                result[j][a] = new int[fill[j]];
+                fill[j] = 0;
+            }
+
+            for (int p : list) {
+                if (target[p] < 0) {
+                    for (int j = 0; j < numSubsets; ++j) {
+                        if (offset[j] > 0) {
+                            result[j][a][fill[j]++] = position[p];
+                        }
+                    }
+                } else {
+                    int j = target[p];
+                    result[j][a][fill[j]++] = offset[j] + position[p];
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * create the binned subsets. Every subset but the largest counts its
+     * histograms here, and the largest gets the parent's minus theirs, bin
+     * by bin, so only the rows of the smaller subsets are scanned. That
+     * only holds when no row was sent to more than one subset, otherwise
+     * every subset counts its own histograms once it is built
+     */
+    private mySubset[] partitionBinned(int numShared, int[][] subsetRows, double[][] subsetRowWeights) {
+        int numSubsets = subsetRows.length;
+        mySubset[] result = new mySubset[numSubsets];
+
+        for (int j = 0; j < numSubsets; ++j) {
+            result[j] = new mySubset(store, subsetRows[j], subsetRowWeights[j], null, null, binning, null);
+        }
+
+        if (numShared == 0 && histograms != null) {
+            int largest = 0;
+
+            for (int j = 1; j < numSubsets; ++j) {
+                if (subsetRows[j].length > subsetRows[largest].length) {
+                    largest = j;
+                }
+            }
+
+            double[][] subtracted = new double[histograms.length][];
+
+            for (int a = 0; a < histograms.length; ++a) {
+                subtracted[a] = histograms[a] == null ? null : histograms[a].clone();
+            }
+
+            for (int j = 0; j < numSubsets; ++j) {
+                if (j == largest) {
+                    continue;
+                }
+
+                result[j].histograms = result[j].countHistograms();
+
+                for (int a = 0; a < subtracted.length; ++a) {
+                    for (int k = 0; subtracted[a] != null && k < subtracted[a].length; ++k) {
+                        subtracted[a][k] -= result[j].histograms[a][k];
+                    }
+                }
+            }
+
+            // rounding can leave tiny weights behind in bins that are empty
+            for (double[] histogram : subtracted) {
+                for (int k = 0; histogram != null && k < histogram.length; ++k) {
+                    if (histogram[k] < Utils.SMALL) {
+                        histogram[k] = 0;
+                    }
+                }
+            }
+
+            result[largest].histograms = subtracted;
+        }
+
+        return result;
+    }
+
+    /**
+     * return a view of the positions with a positive count, each row
+     * weighing count times its weight here, such as a bootstrap sample.
+     * The rows and values stay shared and the sorted orders are filtered
+     * instead of sorted again, so a sample costs a few int arrays
+     */
+    public mySubset sample(int[] counts) {
+        if (binning == null && sortedPositions == null) {
+            throw new IllegalStateException("Sort orders have been released");
+        }
+
+        int[] position = new int[rows.length];
+        int numSampled = 0;
+
+        for (int i = 0; i < rows.length; ++i) {
+            position[i] = counts[i] > 0 ? numSampled++ : -1;
+        }
+
+        int[] sampleRows = new int[numSampled];
+        double[] sampleWeights = new double[numSampled];
+
+        for (int i = 0; i < rows.length; ++i) {
+            if (position[i] >= 0) {
+                sampleRows[position[i]] = rows[i];
+                sampleWeights[position[i]] = weights[i] * counts[i];
+            }
+        }
+
+        if (binning != null) {
+            return new mySubset(store, sampleRows, sampleWeights, null, null, binning, null);
+        }
+
+        return new mySubset(store, sampleRows, sampleWeights, keepPositions(sortedPositions, position),
+                missingPositions == null ? null : keepPositions(missingPositions, position));
+    }
+
+    /**
+     * map lists of positions to their new position, leaving out the ones
+     * that map to -1, this keeps them in order
+     */
+    private static int[][] keepPositions(int[][] lists, int[] position) {
+        int[][] result = new int[lists.length][];
+
+        for (int a = 0; a < lists.length; ++a) {
+            if (lists[a] == null) {
+                continue;
+            }
+
+            int numKept = 0;
+
+            for (int p : lists[a]) {
+                if (position[p] >= 0) {
+                    ++numKept;
+                }
+            }
+
+            result[a] = new int[numKept];
+            numKept = 0;
+
+            for (int p : lists[a]) {
+                if (position[p] >= 0) {
+                    result[a][numKept++] = position[p];
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * count the weight of every class per value of the nominal attributes
+     * accepted by counted over all rows of the view, in parallel on the
+     * pool when one is given
+     */
+    public myContingencyTable countNominal(IntPredicate counted, ForkJoinPool pool) {
+        return myContingencyTable.count(store, rows, 0, rows.length, weights, counted, pool);
+    }
+
+    /**
+     * drop the sorted orders and histograms once the children have
+     * been created
+     */
+    public void releaseSplitData() {
+        sortedPositions = null;
+        missingPositions = null;
+        histograms = null;
+    }
+
+    /**
+     * return the dataset header of the view
+     */
+    public Instances getHeader() {
+        return store.getHeader();
+    }
+
+    public Attribute attribute(int attributeIndex) {
+        return store.attribute(attributeIndex);
+    }
+
+    public int numAttributes() {
+        return store.numAttributes();
+    }
+
+    public int classIndex() {
+        return store.classIndex();
+    }
+
+    public int numClasses() {
+        return store.numClasses();
+    }
+
+    /**
+     * return the total amount of rows in the view
+     */
+    public int numRows() {
+        return rows.length;
+    }
+
+    /**
+     * return the value of an attribute at a position of the view
+     */
+    public double value(int position, int attributeIndex) {
+        return store.value(rows[position], attributeIndex);
+    }
+
+    /**
+     * return the class value at a position of the view
+     */
+    public int classValue(int position) {
+        return store.classCode(rows[position]);
+    }
+
+    /**
+     * return the weight at a position of the view
+     */
+    public double weight(int position) {
+        return weights[position];
+    }
+
+    /**
+     * return whether the view only keeps the non-zero values of every
+     * attribute (see sortedPositions and missingPositions)
+     */
+    public boolean isSparse() {
+        return classWeights != null;
+    }
+
+    /**
+     * return the weight of every class over all rows of a sparse view,
+     * the array must not be changed
+     */
+    public double[] classWeights() {
+        return classWeights;
+    }
+
+    /**
+     * return whether the numeric attributes are binned (histogram mode)
+     */
+    public boolean isBinned() {
+        return binning != null;
+    }
+
+    /**
+     * return the per-bin class weights of a binned attribute, laid out
+     * as [bin * numClasses + class]
+     */
+    public double[] histogram(int attributeIndex) {
+        if (histograms == null) {
+            throw new IllegalStateException("Histograms have not been counted or have been released");
+        }
+
+        return histograms[attributeIndex];
+    }
+
+    /**
+     * return the cut point between bin and bin + 1 of a binned attribute
+     */
+    public double cutPoint(int attributeIndex, int bin) {
+        return binning.cutPoint(attributeIndex, bin);
+    }
+
+    /**
+     * return the positions of the known values of a numeric attribute
+     * in ascending order, in a sparse view only the non-zero ones of
+     * any attribute
+     */
+    public int[] sortedPositions(int attributeIndex) {
+        if (sortedPositions == null) {
+            throw new IllegalStateException("Sort orders have been released");
+        }
+
+        return sortedPositions[attributeIndex];
+    }
+
+    /**
+     * return the positions of the missing values of an attribute
+     * of a sparse view
+     */
+    public int[] missingPositions(int attributeIndex) {
+        if (missingPositions == null) {
+            throw new IllegalStateException("Sort orders have been released");
+        }
+
+        return missingPositions[attributeIndex];
+    }
+}
@@ -0,0 +1,209 @@
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.FastVector;
+import weka.core.Instances;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Binary model file of a trained myID3 or myC45. It holds the compiled
+ * tree instead of the serialized objects, so it is a fraction of the
+ * size and is read with a few bulk copies, without reflection.
+ *
+ * Layout, big-endian: MAGIC, VERSION, the kind of classifier, the header
+ * (relation name, class index, then every attribute with its name, type
+ * and nominal values), the prediction settings of the kind and the
+ * arrays of the compiled tree. Strings are a length and UTF-8 bytes.
+ */
+public class myTreeFile {
+
+    public static final int MAGIC = 0x4D595452;
+    public static final int VERSION = 1;
+
+    private static final byte KIND_ID3 = 1;
+    private static final byte KIND_C45 = 2;
+
+    private static final byte NOMINAL = 0;
+    private static final byte NUMERIC = 1;
+    private static final byte STRING = 2;
+
+    private myTreeFile() {
+
+    }
+
+    /**
+     * write a trained myID3 or myC45 to a file
+     */
+    public static void write(String fileName, Classifier classifier) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(fileName))) {
+            write(out, classifier);
+        }
+    }
+
+    /**
+     * write a trained myID3 or myC45 to a stream
+     */
+    public static void write(OutputStream stream, Classifier classifier) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+
+        if (classifier instanceof myID3) {
+            myID3 tree = (myID3)classifier;
+            writeStart(out, KIND_ID3, tree.getHeader());
+            tree.compile().write(out);
+        } else if (classifier instanceof myC45) {
+            myC45 tree = (myC45)classifier;
+            writeStart(out, KIND_C45, tree.getHeader());
+            out.writeBoolean(tree.getSpreadMissingValues());
+            tree.compile().write(out);
+        } else {
+            throw new IllegalArgumentException("Only myID3 and myC45 can be written, not " + classifier.getClass().getName());
+        }
+
+        out.flush();
+    }
+
+    /**
+     * read a classifier written by write from a file
+     */
+    public static Classifier read(String fileName) throws IOException {
+        return read(ByteBuffer.wrap(Files.readAllBytes(Paths.get(fileName))));
+    }
+
+    /**
+     * read a classifier written by write from a stream
+     */
+    public static Classifier read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[65536];
+        int read;
+
+        while ((read = in.read(buffer)) != -1) {
+            bytes.write(buffer, 0, read);
+        }
+
+        return read(ByteBuffer.wrap(bytes.toByteArray()));
+    }
+
+    private static Classifier read(ByteBuffer in) throws IOException {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a model file");
+            }
+
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Model file version " + version + " is not supported, expected " + VERSION);
+            }
+
+            byte kind = in.get();
+            Instances header = readHeader(in);
+
+            if (kind == KIND_ID3) {
+                return myID3.fromCompiledTree(header, myCompiledTree.read(in));
+            } else if (kind == KIND_C45) {
+                boolean spreadMissingValues = in.get() != 0;
+                return myC45.fromCompiledTree(header, myCompiledTree.read(in), spreadMissingValues);
+            } else {
+                throw new IOException("Unknown classifier kind " + kind);
+            }
+        } catch (java.nio.BufferUnderflowException e) {
+            throw new IOException("Model file is truncated", e);
+        }
+    }
+
+    private static void writeStart(DataOutputStream out, byte kind, Instances header) throws IOException {
+        if (header == null) {
+            throw new IllegalStateException("Classifier has not build yet");
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeByte(kind);
+
+        writeString(out, header.relationName());
+        out.writeInt(header.classIndex());
+        out.writeInt(header.numAttributes());
+
+        for (int j = 0; j < header.numAttributes(); ++j) {
+            Attribute attribute = header.attribute(j);
+            writeString(out, attribute.name());
+
+            if (attribute.isNominal()) {
+                out.writeByte(NOMINAL);
+                out.writeInt(attribute.numValues());
+
+                for (int v = 0; v < attribute.numValues(); ++v) {
+                    writeString(out, attribute.value(v));
+                }
+            } else if (attribute.isNumeric()) {
+                out.writeByte(NUMERIC);
+            } else if (attribute.isString()) {
+                out.writeByte(STRING);
+            } else {
+                throw new IOException("Attribute " + attribute.name() + " can not be written");
+            }
+        }
+    }
+
+    private static Instances readHeader(ByteBuffer in) throws IOException {
+        String relationName = readString(in);
+        int classIndex = in.getInt();
+        int numAttributes = in.getInt();
+        FastVector attributes = new FastVector(numAttributes);
+
+        for (int j = 0; j < numAttributes; ++j) {
+            String name = readString(in);
+            byte type = in.get();
+
+            if (type == NOMINAL) {
+                int numValues = in.getInt();
+                FastVector values = new FastVector(numValues);
+
+                for (int v = 0; v < numValues; ++v) {
+                    values.addElement(readString(in));
+                }
+                attributes.addElement(new Attribute(name, values));
+            } else if (type == NUMERIC) {
+                attributes.addElement(new Attribute(name));
+            } else if (type == STRING) {
+                attributes.addElement(new Attribute(name, (FastVector)null));
+            } else {
+                throw new IOException("Unknown attribute type " + type);
+            }
+        }
+
+        Instances header = new Instances(relationName, attributes, 0);
+        header.setClassIndex(classIndex);
+
+        return header;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+
+        if (length < 0 || length > in.remaining()) {
+            throw new IOException("Corrupt string in model file");
+        }
+
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}